@@ -0,0 +1,195 @@
+package com.ldap.benchmark;
+
+import com.ldap.service.LDAPConnectionPools;
+import com.ldap.service.LDAPPoolConfig;
+import com.ldap.service.LDAPService;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles of the {@link LDAPService} access paths against an in-memory directory seeded
+ * with {@code userCount} users. Run with {@code mvn -P benchmark test-compile exec:exec}. JMH takes one thread count
+ * per run, so sweep it with one run per count, e.g.
+ * {@code for t in 1 8 64; do mvn -P benchmark test-compile exec:exec -Djmh.args="LDAPServiceBenchmark -f 1 -t $t"; done}.
+ * The {@code OnOwnConnection} benchmarks are the single-connection baseline: every thread has its own connection and
+ * its own service, as callers of the original API did.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LDAPServiceBenchmark {
+
+    private static final String PARENT_DN = "ou=people,dc=fico,dc=com";
+    private static final String PASSWORD = "cl0ud+rain";
+
+    @State(Scope.Benchmark)
+    public static class Directory {
+
+        @Param({"100000", "1000000"})
+        public int userCount;
+
+        @Param({"64"})
+        public int poolSize;
+
+        InMemoryDirectoryServer server;
+        LDAPConnectionPool adminPool;
+        LDAPConnectionPool bindPool;
+        LDAPService ldapService;
+
+        @Setup(Level.Trial)
+        public void setUp() throws LDAPException, LDIFException {
+            InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com", "cn=config");
+            config.addAdditionalBindCredentials(LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD);
+            config.setSchema(null);
+
+            server = new InMemoryDirectoryServer(config);
+            server.startListening();
+
+            server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
+            server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+            server.add("dn: cn=config", "objectClass: top", "objectClass: nsContainer", "cn: config");
+            server.add("dn: cn=Password Policy,cn=config", "objectClass: top", "objectClass: pwdPolicy", "cn: Password Policy", "pwdMaxAge: 7776000");
+            for (int i = 0; i < userCount; i++) {
+                server.add(user(i));
+            }
+
+            LDAPPoolConfig poolConfig = new LDAPPoolConfig(poolSize, poolSize);
+            adminPool = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), poolConfig);
+            bindPool = LDAPConnectionPools.createBindPool("localhost", server.getListenPort(), poolConfig);
+            ldapService = new LDAPService(adminPool, bindPool, PARENT_DN);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            adminPool.close();
+            bindPool.close();
+            server.shutDown(true);
+        }
+
+        private static Entry user(int i) {
+            String uid = username(i);
+            return new Entry(String.format("uid=%s,%s", uid, PARENT_DN),
+                    new Attribute("objectclass", "top", "ficoUser"),
+                    new Attribute("uid", uid),
+                    new Attribute("userPassword", PASSWORD),
+                    new Attribute("cn", uid),
+                    new Attribute("sn", uid),
+                    new Attribute("mail", String.format("%s@fico.com", uid)),
+                    new Attribute("pwdChangedTime", "20140901000000Z"));
+        }
+    }
+
+    /**
+     * Gives every benchmark thread its own slice of the users, so concurrent modifies never touch the same entry.
+     */
+    @State(Scope.Thread)
+    public static class Users {
+
+        private int threadIndex;
+        private int threadCount;
+        private int sliceSize;
+
+        @Setup(Level.Trial)
+        public void setUp(Directory directory, ThreadParams threadParams) {
+            threadIndex = threadParams.getThreadIndex();
+            threadCount = threadParams.getThreadCount();
+            sliceSize = Math.max(1, directory.userCount / threadCount);
+        }
+
+        String randomUsername() {
+            return username(threadIndex + threadCount * ThreadLocalRandom.current().nextInt(sliceSize));
+        }
+    }
+
+    /**
+     * A connection and service per benchmark thread; admin reads re-bind the connection first, as in the original
+     * access path.
+     */
+    @State(Scope.Thread)
+    public static class OwnConnection {
+
+        LDAPConnection connection;
+        LDAPService ldapService;
+
+        @Setup(Level.Trial)
+        public void setUp(Directory directory) throws LDAPException {
+            connection = new LDAPConnection("localhost", directory.server.getListenPort());
+            ldapService = new LDAPService(connection, PARENT_DN);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            connection.close();
+        }
+    }
+
+    static String username(int i) {
+        return String.format("user%07d", i);
+    }
+
+    @Benchmark
+    public boolean haveLDAPAuthentication(Directory directory, Users users) {
+        return directory.ldapService.haveLDAPAuthentication(users.randomUsername(), PASSWORD);
+    }
+
+    @Benchmark
+    public String currentUserStatus(Directory directory, Users users) throws LDAPException {
+        return directory.ldapService.currentUserStatus(users.randomUsername());
+    }
+
+    @Benchmark
+    public Date getUserAccountExpirationDate(Directory directory, Users users) {
+        return directory.ldapService.getUserAccountExpirationDate(users.randomUsername());
+    }
+
+    /**
+     * Inactivates and re-activates the same user so the directory state stays the same from one invocation to the
+     * next.
+     */
+    @Benchmark
+    public void inactivateThenActivateAccount(Directory directory, Users users) throws LDAPException, LDIFException {
+        String username = users.randomUsername();
+        directory.ldapService.inactivateAccount(username);
+        directory.ldapService.activateAccount(username);
+    }
+
+    @Benchmark
+    public void updateUserPassword(Directory directory, Users users) throws LDAPException, LDIFException {
+        directory.ldapService.updateUserPassword(users.randomUsername(), PASSWORD);
+    }
+
+    @Benchmark
+    public boolean haveLDAPAuthenticationOnOwnConnection(OwnConnection ownConnection, Users users) {
+        return ownConnection.ldapService.haveLDAPAuthentication(users.randomUsername(), PASSWORD);
+    }
+
+    @Benchmark
+    public String currentUserStatusOnOwnConnection(OwnConnection ownConnection, Users users) throws LDAPException {
+        return ownConnection.ldapService.currentUserStatus(users.randomUsername());
+    }
+
+    @Benchmark
+    public Date getUserAccountExpirationDateOnOwnConnection(OwnConnection ownConnection, Users users) {
+        return ownConnection.ldapService.getUserAccountExpirationDate(users.randomUsername());
+    }
+}
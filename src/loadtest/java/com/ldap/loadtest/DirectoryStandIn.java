@@ -0,0 +1,86 @@
+package com.ldap.loadtest;
+
+import com.ldap.service.LDAPConnectionPools;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryRequestHandler;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process replacement for ODSEE: an in-memory directory seeded with {@code userCount} users and a default password
+ * policy, served on a local port through a {@link FaultInjectingRequestHandler} so latency and errors can be injected
+ * on the server side.
+ * <p>
+ * The SDK in use has no operation interceptor on {@code InMemoryDirectoryServer}, so the in-memory request handler is
+ * put behind a plain {@link LDAPListener} instead.
+ */
+public class DirectoryStandIn {
+
+    public static final String BASE_DN = "dc=fico,dc=com";
+    public static final String PARENT_DN = "ou=people,dc=fico,dc=com";
+    public static final String PASSWORD = "cl0ud+rain";
+
+    private final InMemoryRequestHandler directory;
+    private final FaultInjectingRequestHandler faults;
+    private final LDAPListener listener;
+
+    /**
+     * @param maxChangeLogEntries size of {@code cn=changelog}, which the account state cache polls; 0 disables it
+     */
+    public DirectoryStandIn(int userCount, int maxChangeLogEntries) throws LDAPException, IOException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN, "cn=config");
+        config.addAdditionalBindCredentials(LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD);
+        config.setSchema(null);
+        config.setMaxChangeLogEntries(maxChangeLogEntries);
+
+        directory = new InMemoryRequestHandler(config);
+        List<Entry> entries = new ArrayList<Entry>(userCount + 4);
+        entries.add(new Entry(BASE_DN, new Attribute("objectClass", "top", "domain")));
+        entries.add(new Entry(PARENT_DN, new Attribute("objectClass", "top", "organizationalunit")));
+        entries.add(new Entry("cn=config", new Attribute("objectClass", "top", "nsContainer"), new Attribute("cn", "config")));
+        entries.add(new Entry("cn=Password Policy,cn=config", new Attribute("objectClass", "top", "pwdPolicy"),
+                new Attribute("cn", "Password Policy"), new Attribute("pwdMaxAge", "7776000")));
+        for (int i = 0; i < userCount; i++) {
+            entries.add(user(username(i)));
+        }
+        directory.addEntries(entries);
+
+        faults = new FaultInjectingRequestHandler(directory);
+        listener = new LDAPListener(new LDAPListenerConfig(0, faults));
+        listener.startListening();
+    }
+
+    public static String username(int i) {
+        return String.format("user%07d", i);
+    }
+
+    private static Entry user(String uid) {
+        return new Entry(String.format("uid=%s,%s", uid, PARENT_DN),
+                new Attribute("objectclass", "top", "ficoUser"),
+                new Attribute("uid", uid),
+                new Attribute("userPassword", PASSWORD),
+                new Attribute("cn", uid),
+                new Attribute("sn", uid),
+                new Attribute("mail", String.format("%s@fico.com", uid)),
+                new Attribute("pwdChangedTime", "20140901000000Z"));
+    }
+
+    public int getListenPort() {
+        return listener.getListenPort();
+    }
+
+    public FaultInjectingRequestHandler getFaults() {
+        return faults;
+    }
+
+    public void shutDown() {
+        listener.shutDown(true);
+    }
+}
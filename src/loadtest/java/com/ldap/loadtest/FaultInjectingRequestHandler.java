@@ -0,0 +1,209 @@
+package com.ldap.loadtest;
+
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.protocol.AbandonRequestProtocolOp;
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.AddResponseProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.BindResponseProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareResponseProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteResponseProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedResponseProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyDNResponseProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyResponseProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchResultDoneProtocolOp;
+import com.unboundid.ldap.protocol.UnbindRequestProtocolOp;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Request interceptor in front of another request handler, usually the in-memory directory's: each request first
+ * sleeps for the configured latency of its operation type, then fails with the configured result code at the
+ * configured rate, and otherwise goes to the wrapped handler. Settings are shared by every client connection and may
+ * be changed while the listener runs.
+ */
+public class FaultInjectingRequestHandler extends LDAPListenerRequestHandler {
+
+    public enum OperationType {
+        ADD, BIND, COMPARE, DELETE, EXTENDED, MODIFY, MODIFY_DN, SEARCH
+    }
+
+    private final LDAPListenerRequestHandler delegate;
+    private final Map<OperationType, Fault> faults;
+
+    public FaultInjectingRequestHandler(LDAPListenerRequestHandler delegate) {
+        this(delegate, new EnumMap<OperationType, Fault>(OperationType.class));
+    }
+
+    private FaultInjectingRequestHandler(LDAPListenerRequestHandler delegate, Map<OperationType, Fault> faults) {
+        this.delegate = delegate;
+        this.faults = faults;
+    }
+
+    /**
+     * @param latencyMillis fixed delay added to every request of the type
+     * @param jitterMillis  up to this much more delay, uniformly distributed
+     * @param errorRate     share of requests, between 0 and 1, answered with {@code errorCode} instead of being processed
+     */
+    public void setFault(OperationType operationType, long latencyMillis, long jitterMillis, double errorRate, ResultCode errorCode) {
+        synchronized (faults) {
+            faults.put(operationType, new Fault(latencyMillis, jitterMillis, errorRate, errorCode));
+        }
+    }
+
+    public void clearFaults() {
+        synchronized (faults) {
+            faults.clear();
+        }
+    }
+
+    @Override
+    public LDAPListenerRequestHandler newInstance(LDAPListenerClientConnection connection) throws LDAPException {
+        return new FaultInjectingRequestHandler(delegate.newInstance(connection), faults);
+    }
+
+    @Override
+    public void closeInstance() {
+        delegate.closeInstance();
+    }
+
+    @Override
+    public void processAbandonRequest(int messageID, AbandonRequestProtocolOp request, List<Control> controls) {
+        delegate.processAbandonRequest(messageID, request, controls);
+    }
+
+    @Override
+    public void processUnbindRequest(int messageID, UnbindRequestProtocolOp request, List<Control> controls) {
+        delegate.processUnbindRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.ADD);
+        if (error != null) {
+            return new LDAPMessage(messageID, new AddResponseProtocolOp(error.intValue(), null, message(error), null));
+        }
+        return delegate.processAddRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.BIND);
+        if (error != null) {
+            return new LDAPMessage(messageID, new BindResponseProtocolOp(error.intValue(), null, message(error), null, null));
+        }
+        return delegate.processBindRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.COMPARE);
+        if (error != null) {
+            return new LDAPMessage(messageID, new CompareResponseProtocolOp(error.intValue(), null, message(error), null));
+        }
+        return delegate.processCompareRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.DELETE);
+        if (error != null) {
+            return new LDAPMessage(messageID, new DeleteResponseProtocolOp(error.intValue(), null, message(error), null));
+        }
+        return delegate.processDeleteRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.EXTENDED);
+        if (error != null) {
+            return new LDAPMessage(messageID, new ExtendedResponseProtocolOp(error.intValue(), null, message(error), null, null, null));
+        }
+        return delegate.processExtendedRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.MODIFY);
+        if (error != null) {
+            return new LDAPMessage(messageID, new ModifyResponseProtocolOp(error.intValue(), null, message(error), null));
+        }
+        return delegate.processModifyRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.MODIFY_DN);
+        if (error != null) {
+            return new LDAPMessage(messageID, new ModifyDNResponseProtocolOp(error.intValue(), null, message(error), null));
+        }
+        return delegate.processModifyDNRequest(messageID, request, controls);
+    }
+
+    @Override
+    public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls) {
+        ResultCode error = inject(OperationType.SEARCH);
+        if (error != null) {
+            return new LDAPMessage(messageID, new SearchResultDoneProtocolOp(error.intValue(), null, message(error), null));
+        }
+        return delegate.processSearchRequest(messageID, request, controls);
+    }
+
+    /**
+     * Applies the delay for the operation type.
+     *
+     * @return the result code to fail the request with, or {@code null} to process it
+     */
+    private ResultCode inject(OperationType operationType) {
+        Fault fault;
+        synchronized (faults) {
+            fault = faults.get(operationType);
+        }
+        if (fault == null) {
+            return null;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delayMillis = fault.latencyMillis + (fault.jitterMillis > 0 ? random.nextLong(fault.jitterMillis + 1) : 0L);
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return fault.errorRate > 0.0 && random.nextDouble() < fault.errorRate ? fault.errorCode : null;
+    }
+
+    private static String message(ResultCode error) {
+        return String.format("Injected %s", error.getName());
+    }
+
+    private static final class Fault {
+        private final long latencyMillis;
+        private final long jitterMillis;
+        private final double errorRate;
+        private final ResultCode errorCode;
+
+        private Fault(long latencyMillis, long jitterMillis, double errorRate, ResultCode errorCode) {
+            this.latencyMillis = latencyMillis;
+            this.jitterMillis = jitterMillis;
+            this.errorRate = errorRate;
+            this.errorCode = errorCode;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.ldap.loadtest;
+
+import com.ldap.service.AuthenticationResult;
+import com.ldap.service.LDAPService;
+import com.ldap.service.LatencyHistogram;
+import com.ldap.service.UserAccountSnapshot;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a weighted mix of {@link LDAPService} calls from a fixed number of threads against users picked at random.
+ * <p>
+ * With a target rate, each thread follows its own fixed schedule and latency is measured from the moment a call was
+ * due rather than when it was sent, so time spent queued behind a slow directory shows up in the percentiles instead
+ * of silently lowering the request rate. Without one, threads call back to back.
+ */
+public class LoadGenerator {
+
+    public enum Operation {
+        AUTH, STATUS, EXPIRY, MODIFY
+    }
+
+    private final LDAPService ldapService;
+    private final int userCount;
+    private final Operation[] mix;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, OperationStats> stats = new EnumMap<Operation, OperationStats>(Operation.class);
+
+    /**
+     * @param weights relative share of each operation; operations left out are not run
+     */
+    public LoadGenerator(LDAPService ldapService, int userCount, Map<Operation, Integer> weights) {
+        this.ldapService = ldapService;
+        this.userCount = userCount;
+
+        List<Operation> operations = new ArrayList<Operation>();
+        List<Integer> cumulative = new ArrayList<Integer>();
+        int total = 0;
+        for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+            if (weight.getValue() > 0) {
+                total += weight.getValue();
+                operations.add(weight.getKey());
+                cumulative.add(total);
+            }
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty");
+        }
+        this.mix = operations.toArray(new Operation[operations.size()]);
+        this.cumulativeWeights = new int[cumulative.size()];
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            cumulativeWeights[i] = cumulative.get(i);
+        }
+        for (Operation operation : mix) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    /**
+     * Runs the mix for the given time and blocks until every thread has finished its last call.
+     *
+     * @param targetRate calls per second over all threads, or 0 to run unthrottled
+     */
+    public void run(int threads, double targetRate, long durationMillis) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long periodNanos = targetRate > 0 ? (long) (threads * 1e9 / targetRate) : 0L;
+
+        List<Thread> workers = new ArrayList<Thread>(threads);
+        for (int i = 0; i < threads; i++) {
+            long firstDueNanos = startNanos + (periodNanos * i) / threads;
+            Thread worker = new Thread(new Worker(firstDueNanos, periodNanos, endNanos), String.format("load-%d", i));
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    public void reset() {
+        for (OperationStats operationStats : stats.values()) {
+            operationStats.reset();
+        }
+    }
+
+    public Map<Operation, OperationStats> getStats() {
+        return stats;
+    }
+
+    private Operation pick(ThreadLocalRandom random) {
+        int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return mix[i];
+            }
+        }
+        return mix[mix.length - 1];
+    }
+
+    /**
+     * @return {@code null} on success, otherwise the name the failure is counted under
+     */
+    private String call(Operation operation, String username) {
+        try {
+            switch (operation) {
+                case AUTH:
+                    AuthenticationResult result = ldapService.authenticate(username, DirectoryStandIn.PASSWORD);
+                    return result == AuthenticationResult.SUCCESS ? null : result.name();
+                case STATUS:
+                    ldapService.currentUserStatus(username);
+                    return null;
+                case EXPIRY:
+                    // Same path as getUserAccountExpirationDate(String), which would swallow the error.
+                    UserAccountSnapshot snapshot = ldapService.getUserAccountSnapshot(username);
+                    if (snapshot == null) {
+                        return "NO_SUCH_USER";
+                    }
+                    return ldapService.getUserAccountExpirationDate(snapshot) != null ? null : "NO_EXPIRATION_DATE";
+                case MODIFY:
+                    ldapService.updateUserPassword(username, DirectoryStandIn.PASSWORD);
+                    return null;
+                default:
+                    throw new IllegalStateException(operation.name());
+            }
+        } catch (LDAPException le) {
+            return le.getResultCode().getName().toUpperCase().replace(' ', '_');
+        } catch (LDIFException le) {
+            return "LDIF_EXCEPTION";
+        } catch (RuntimeException re) {
+            return re.getClass().getSimpleName();
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final long periodNanos;
+        private final long endNanos;
+        private long dueNanos;
+
+        private Worker(long firstDueNanos, long periodNanos, long endNanos) {
+            this.dueNanos = firstDueNanos;
+            this.periodNanos = periodNanos;
+            this.endNanos = endNanos;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (true) {
+                long now = System.nanoTime();
+                if (periodNanos > 0) {
+                    if (dueNanos - endNanos >= 0) {
+                        return;
+                    }
+                    while (dueNanos - now > 0) {
+                        LockSupport.parkNanos(dueNanos - now);
+                        now = System.nanoTime();
+                    }
+                } else if (now - endNanos >= 0) {
+                    return;
+                }
+
+                long startNanos = periodNanos > 0 ? dueNanos : now;
+                Operation operation = pick(random);
+                String error = call(operation, DirectoryStandIn.username(random.nextInt(userCount)));
+                stats.get(operation).record(System.nanoTime() - startNanos, error);
+                dueNanos += periodNanos;
+            }
+        }
+    }
+
+    public static class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+        void record(long elapsedNanos, String error) {
+            latency.recordNanos(elapsedNanos);
+            if (error == null) {
+                return;
+            }
+            errorCount.incrementAndGet();
+            AtomicLong count = errors.get(error);
+            if (count == null) {
+                AtomicLong created = new AtomicLong();
+                count = errors.putIfAbsent(error, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        void reset() {
+            latency.reset();
+            errorCount.set(0L);
+            errors.clear();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getErrorCount() {
+            return errorCount.get();
+        }
+
+        public Map<String, Long> getErrors() {
+            Map<String, Long> breakdown = new TreeMap<String, Long>();
+            for (Map.Entry<String, AtomicLong> error : errors.entrySet()) {
+                breakdown.put(error.getKey(), error.getValue().get());
+            }
+            return breakdown;
+        }
+    }
+
+    /**
+     * Parses a mix such as {@code auth:60,status:25,expiry:10,modify:5}.
+     */
+    public static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new LinkedHashMap<Operation, Integer>();
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException(String.format("Expected operation:weight, got %s", part));
+            }
+            weights.put(Operation.valueOf(nameAndWeight[0].trim().toUpperCase()), Integer.parseInt(nameAndWeight[1].trim()));
+        }
+        return weights;
+    }
+}
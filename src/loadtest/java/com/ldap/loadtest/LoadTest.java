@@ -0,0 +1,234 @@
+package com.ldap.loadtest;
+
+import com.ldap.service.AccountStateCache;
+import com.ldap.service.LDAPConnectionPools;
+import com.ldap.service.LDAPMetrics;
+import com.ldap.service.LDAPPoolConfig;
+import com.ldap.service.LDAPService;
+import com.ldap.service.LatencyHistogram;
+import com.ldap.service.OperationStatistics;
+import com.ldap.service.PoolStatistics;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays a production-like mix of {@link LDAPService} calls against a {@link DirectoryStandIn} and prints the
+ * results as JSON: throughput, p50/p99/p999 latency and an error breakdown per operation, plus the service's own
+ * per-request metrics and pool figures. Statistics collected during warm-up are discarded.
+ * <p>
+ * Options are {@code name=value} arguments, all optional:
+ * <pre>
+ * users=10000 threads=32 rps=0 warmup=10 soak=60 mix=auth:60,status:25,expiry:10,modify:5
+ * pool=16 responseTimeoutMillis=10000 cache=false out=results.json
+ * fault.search=latencyMillis[,jitterMillis[,errorRate[,resultCode]]]
+ * </pre>
+ * {@code rps=0} runs unthrottled; {@code warmup} and {@code soak} are in seconds. Faults may be given for
+ * {@code add, bind, compare, delete, extended, modify, modify_dn} and {@code search}; the result code defaults to
+ * 51 (busy). Run with {@code mvn -P loadtest test-compile exec:exec -Dloadtest.args="..."}.
+ */
+public class LoadTest {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<String, String>();
+
+    static {
+        DEFAULTS.put("users", "10000");
+        DEFAULTS.put("threads", "32");
+        DEFAULTS.put("rps", "0");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("soak", "60");
+        DEFAULTS.put("mix", "auth:60,status:25,expiry:10,modify:5");
+        DEFAULTS.put("pool", "16");
+        DEFAULTS.put("responseTimeoutMillis", "10000");
+        DEFAULTS.put("cache", "false");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<String, String>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Expected name=value, got %s", arg));
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        int users = Integer.parseInt(options.get("users"));
+        int threads = Integer.parseInt(options.get("threads"));
+        double rps = Double.parseDouble(options.get("rps"));
+        long warmupMillis = Long.parseLong(options.get("warmup")) * 1000L;
+        long soakMillis = Long.parseLong(options.get("soak")) * 1000L;
+        int poolSize = Integer.parseInt(options.get("pool"));
+        boolean cache = Boolean.parseBoolean(options.get("cache"));
+
+        DirectoryStandIn directory = new DirectoryStandIn(users, cache ? Math.max(10000, users) : 0);
+        LDAPConnectionPool adminPool = null;
+        LDAPConnectionPool bindPool = null;
+        AccountStateCache accountStateCache = null;
+        try {
+            LDAPPoolConfig poolConfig = new LDAPPoolConfig(poolSize, poolSize);
+            poolConfig.setResponseTimeoutMillis(Long.parseLong(options.get("responseTimeoutMillis")));
+            adminPool = LDAPConnectionPools.createAdminPool("localhost", directory.getListenPort(), poolConfig);
+            bindPool = LDAPConnectionPools.createBindPool("localhost", directory.getListenPort(), poolConfig);
+            LDAPService ldapService = new LDAPService(adminPool, bindPool, DirectoryStandIn.PARENT_DN);
+            LDAPMetrics metrics = new LDAPMetrics();
+            ldapService.setMetricsRegistry(metrics);
+            if (cache) {
+                accountStateCache = ldapService.enableAccountStateCache(AccountStateCache.DEFAULT_MAX_STALENESS_MILLIS, 1000L);
+            }
+
+            // Faults go in once the pools are up, so the pools' own binds are not failed.
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                if (option.getKey().startsWith("fault.")) {
+                    applyFault(directory.getFaults(), option.getKey().substring("fault.".length()), option.getValue());
+                }
+            }
+
+            LoadGenerator generator = new LoadGenerator(ldapService, users, LoadGenerator.parseMix(options.get("mix")));
+            if (warmupMillis > 0) {
+                generator.run(threads, rps, warmupMillis);
+                generator.reset();
+                metrics.reset();
+            }
+            long startNanos = System.nanoTime();
+            generator.run(threads, rps, soakMillis);
+            double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+            String json = toJson(options, elapsedSeconds, generator, metrics);
+            if (options.containsKey("out")) {
+                PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.get("out")), StandardCharsets.UTF_8));
+                try {
+                    writer.println(json);
+                } finally {
+                    writer.close();
+                }
+            } else {
+                System.out.println(json);
+            }
+        } finally {
+            if (accountStateCache != null) {
+                accountStateCache.close();
+            }
+            if (adminPool != null) {
+                adminPool.close();
+            }
+            if (bindPool != null) {
+                bindPool.close();
+            }
+            directory.shutDown();
+        }
+    }
+
+    private static void applyFault(FaultInjectingRequestHandler faults, String operation, String value) {
+        String[] parts = value.split(",");
+        long latencyMillis = Long.parseLong(parts[0].trim());
+        long jitterMillis = parts.length > 1 ? Long.parseLong(parts[1].trim()) : 0L;
+        double errorRate = parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 0.0;
+        ResultCode errorCode = parts.length > 3 ? ResultCode.valueOf(Integer.parseInt(parts[3].trim())) : ResultCode.BUSY;
+        faults.setFault(FaultInjectingRequestHandler.OperationType.valueOf(operation.toUpperCase()), latencyMillis, jitterMillis, errorRate, errorCode);
+    }
+
+    static String toJson(Map<String, String> options, double elapsedSeconds, LoadGenerator generator, LDAPMetrics metrics) {
+        StringBuilder json = new StringBuilder("{\n  \"config\": {");
+        String separator = "";
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            json.append(separator).append("\n    ").append(quote(option.getKey())).append(": ").append(quote(option.getValue()));
+            separator = ",";
+        }
+        json.append("\n  },\n");
+
+        long requests = 0;
+        long errors = 0;
+        for (LoadGenerator.OperationStats stats : generator.getStats().values()) {
+            requests += stats.getLatency().getCount();
+            errors += stats.getErrorCount();
+        }
+        json.append("  \"durationSeconds\": ").append(number(elapsedSeconds)).append(",\n");
+        json.append("  \"requests\": ").append(requests).append(",\n");
+        json.append("  \"errors\": ").append(errors).append(",\n");
+        json.append("  \"throughput\": ").append(number(requests / elapsedSeconds)).append(",\n");
+
+        json.append("  \"operations\": {");
+        separator = "";
+        for (Map.Entry<LoadGenerator.Operation, LoadGenerator.OperationStats> operation : generator.getStats().entrySet()) {
+            LoadGenerator.OperationStats stats = operation.getValue();
+            LatencyHistogram latency = stats.getLatency();
+            json.append(separator).append("\n    ").append(quote(operation.getKey().name().toLowerCase())).append(": {")
+                    .append("\"count\": ").append(latency.getCount())
+                    .append(", \"errors\": ").append(stats.getErrorCount())
+                    .append(", \"throughput\": ").append(number(latency.getCount() / elapsedSeconds))
+                    .append(", \"meanMillis\": ").append(number(latency.getMeanMillis()))
+                    .append(", \"p50Millis\": ").append(number(latency.getPercentileMillis(50.0)))
+                    .append(", \"p99Millis\": ").append(number(latency.getPercentileMillis(99.0)))
+                    .append(", \"p999Millis\": ").append(number(latency.getPercentileMillis(99.9)))
+                    .append(", \"maxMillis\": ").append(number(latency.getMaxMillis()))
+                    .append(", \"errorBreakdown\": ").append(counts(stats.getErrors())).append("}");
+            separator = ",";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"ldapOperations\": {");
+        separator = "";
+        for (Map.Entry<String, OperationStatistics> operation : metrics.getOperations().entrySet()) {
+            OperationStatistics stats = operation.getValue();
+            json.append(separator).append("\n    ").append(quote(operation.getKey())).append(": {")
+                    .append("\"count\": ").append(stats.getCount())
+                    .append(", \"failures\": ").append(stats.getFailureCount())
+                    .append(", \"p50Millis\": ").append(number(stats.getP50Millis()))
+                    .append(", \"p99Millis\": ").append(number(stats.getP99Millis()))
+                    .append(", \"p999Millis\": ").append(number(stats.getP999Millis()))
+                    .append(", \"resultCodes\": ").append(counts(stats.getResultCodes())).append("}");
+            separator = ",";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"pools\": {");
+        separator = "";
+        for (Map.Entry<String, PoolStatistics> pool : metrics.getPools().entrySet()) {
+            PoolStatistics stats = pool.getValue();
+            json.append(separator).append("\n    ").append(quote(pool.getKey())).append(": {")
+                    .append("\"successfulCheckouts\": ").append(stats.getSuccessfulCheckouts())
+                    .append(", \"checkoutsAfterWaiting\": ").append(stats.getCheckoutsAfterWaiting())
+                    .append(", \"failedCheckouts\": ").append(stats.getFailedCheckouts())
+                    .append(", \"connectionsClosedDefunct\": ").append(stats.getConnectionsClosedDefunct()).append("}");
+            separator = ",";
+        }
+        json.append("\n  }\n}");
+        return json.toString();
+    }
+
+    private static String counts(Map<String, Long> counts) {
+        StringBuilder json = new StringBuilder("{");
+        String separator = "";
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            json.append(separator).append(quote(count.getKey())).append(": ").append(count.getValue());
+            separator = ", ";
+        }
+        return json.append("}").toString();
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -1,131 +1,111 @@
 package com.ldap;
 
-import com.unboundid.ldap.sdk.BindResult;
+import com.ldap.service.LDAPConnectionPools;
+import com.ldap.service.LDAPPoolConfig;
+import com.ldap.service.LDAPServerSets;
+import com.ldap.service.LDAPService;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
-import com.unboundid.ldap.sdk.LDAPResult;
-import com.unboundid.ldap.sdk.LDAPSearchException;
-import com.unboundid.ldap.sdk.Modification;
-import com.unboundid.ldap.sdk.ModificationType;
-import com.unboundid.ldap.sdk.SearchResult;
-import com.unboundid.ldap.sdk.SearchResultEntry;
-import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.ldif.LDIFException;
 import org.joda.time.DateTime;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 public class LDAPServiceClient {
 
+    /**
+     * One service per connection and parent DN, so the uid and password policy caches of a service are still there
+     * on the next call. Services of connections closed since are dropped at the next lookup.
+     */
+    private static final Map<LDAPConnection, Map<String, LDAPService>> SERVICES = new IdentityHashMap<LDAPConnection, Map<String, LDAPService>>();
+
     public static void setPwdMaxAge(LDAPConnection ldapConnection, String username, String parentDN) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.ADD, "pwdMaxAge", "7776000");
-        ldapModify(ldapConnection, username, parentDN, modification);
+        service(ldapConnection, parentDN).setPwdMaxAge(username);
     }
 
     public static void inactivateAccount(LDAPConnection ldapConnection, String username, String parentDN) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.ADD, "nsroledn", String.format("cn=nsManagedDisabledRole,%s", parentDN));
-        ldapModify(ldapConnection, username, parentDN, modification);
-
-        modification = new Modification(ModificationType.ADD, "nsaccountlock", "true");
-        ldapModify(ldapConnection, username, parentDN, modification);
+        service(ldapConnection, parentDN).inactivateAccount(username);
     }
 
     public static void activateAccount(LDAPConnection ldapConnection, String username, String parentDN) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.DELETE, "nsroledn");
-        ldapModify(ldapConnection, username, parentDN, modification);
-
-        modification = new Modification(ModificationType.DELETE, "nsaccountlock");
-        ldapModify(ldapConnection, username, parentDN, modification);
+        service(ldapConnection, parentDN).activateAccount(username);
     }
 
     public static void updateUserPassword(LDAPConnection ldapConnection, String username, String password, String parentDN) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.REPLACE, "userpassword", password);
-        ldapModify(ldapConnection, username, parentDN, modification);
+        service(ldapConnection, parentDN).updateUserPassword(username, password);
     }
 
     public static String currentUserStatus(LDAPConnection ldapConnection, String username, String parentDN) throws LDAPException {
-        if (isAccountLocked(ldapConnection, username, parentDN)) {
-            return "Locked";
-        } else {
-            return ldapSearch(ldapConnection, parentDN, SearchScope.SUB, String.format("(uid=%s)", username), "nsaccountlock") != null ? "Inactive" : "Active";
-        }
+        return service(ldapConnection, parentDN).currentUserStatus(username);
     }
 
     public static boolean isAccountLocked(LDAPConnection ldapConnection, String username, String parentDN) throws LDAPException {
-        return ldapSearchBoolean(ldapConnection, parentDN, SearchScope.SUB, String.format("(uid=%s)", username), "accountunlocktime");
+        return service(ldapConnection, parentDN).isAccountLocked(username);
     }
 
     public static boolean isAccountActivate(LDAPConnection ldapConnection, String username, String parentDN) throws LDAPException {
-        return !ldapSearchBoolean(ldapConnection, parentDN, SearchScope.SUB, String.format("(uid=%s)", username), "nsaccountlock");
+        return service(ldapConnection, parentDN).isAccountActivate(username);
     }
 
     public static Date getUserAccountExpirationDate(LDAPConnection ldapConnection, String username, String parentDN) {
-        try {
-            int dayInSeconds = 86400;
-            Date infinityTime = new Date(Long.MAX_VALUE);
-            Date userCreateDate = ldapSearchDate(ldapConnection, parentDN, SearchScope.SUB, String.format("(uid=%s)", username), "pwdchangedtime");
-            String userPasswordPolicy = ldapSearchString(ldapConnection, parentDN, SearchScope.SUB, String.format("(uid=%s)", username), "passwordpolicysubentry");
-            userPasswordPolicy = userPasswordPolicy != null ? userPasswordPolicy : "cn=Password Policy,cn=config";
-
-            ldapConnection.bind("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
-            Integer pwdMaxAge = ldapSearchInteger(ldapConnection, userPasswordPolicy, SearchScope.BASE, "(objectclass=*)", "pwdMaxAge");
-
-            if (pwdMaxAge == 0) {
-                return infinityTime;
-            }
-
-            DateTime dateTime = new DateTime(userCreateDate);
-            return dateTime.plusDays(Integer.valueOf(pwdMaxAge) / dayInSeconds).toDate();
-        } catch (LDAPException le) {
-            System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
-        } catch (Exception e) {
-            e.printStackTrace(System.out);
-        }
-        return null;
-    }
-
-    private static String ldapSearchString(LDAPConnection ldapConnection, String parentDN, SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(ldapConnection, parentDN, searchScope, searchFilter, searchAttribute);
-        return (entry != null) ? entry.getAttributeValue(searchAttribute) : null;
-    }
-
-    private static Integer ldapSearchInteger(LDAPConnection ldapConnection, String parentDN, SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(ldapConnection, parentDN, searchScope, searchFilter, searchAttribute);
-        return (entry != null) ? entry.getAttributeValueAsInteger(searchAttribute) : null;
-    }
-
-    private static Date ldapSearchDate(LDAPConnection ldapConnection, String parentDN, SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(ldapConnection, parentDN, searchScope, searchFilter, searchAttribute);
-        return (entry != null) ? entry.getAttributeValueAsDate(searchAttribute) : null;
-    }
-
-    private static Boolean ldapSearchBoolean(LDAPConnection ldapConnection, String parentDN, SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(ldapConnection, parentDN, searchScope, searchFilter, searchAttribute);
-        return (entry != null) ? entry.getAttributeValueAsBoolean(searchAttribute) : false;
-    }
-
-    private static SearchResultEntry ldapSearch(LDAPConnection ldapConnection, String parentDN, SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResult searchResults = ldapConnection.search(parentDN, searchScope, searchFilter, searchAttribute);
-        return (searchResults != null && searchResults.getEntryCount() > 0 && searchResults.getSearchEntries().get(0).hasAttribute(searchAttribute)) ? searchResults.getSearchEntries().get(0) : null;
-    }
-
-    private static LDAPResult ldapModify(LDAPConnection ldapConnection, String username, String parentDN, Modification modification) throws LDAPException {
-        BindResult bindResult = ldapConnection.bind("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
-        LDAPResult ldapResult = ldapConnection.modify(String.format("uid=%s,%s", username, parentDN), modification);
-
-        return ldapResult;
+        return service(ldapConnection, parentDN).getUserAccountExpirationDate(username);
     }
 
     public static void ldapBind(LDAPConnection ldapConnection, String username, String password) {
-        try {
-            ldapConnection.bind(String.format("uid=%s,ou=people,dc=fico,dc=com", username), password);
+        if (service(ldapConnection, "ou=people,dc=fico,dc=com").haveLDAPAuthentication(username, password)) {
             System.out.println("=== Authen Successfully ===");
-        } catch (LDAPException le) {
+        } else {
             System.out.println("=== Authen Faild ===");
-            System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
         }
     }
 
+    private static synchronized LDAPService service(LDAPConnection ldapConnection, String parentDN) {
+        for (Iterator<LDAPConnection> connections = SERVICES.keySet().iterator(); connections.hasNext(); ) {
+            if (!connections.next().isConnected()) {
+                connections.remove();
+            }
+        }
+        Map<String, LDAPService> services = SERVICES.get(ldapConnection);
+        if (services == null) {
+            services = new HashMap<String, LDAPService>();
+            SERVICES.put(ldapConnection, services);
+        }
+        LDAPService ldapService = services.get(parentDN);
+        if (ldapService == null) {
+            ldapService = new LDAPService(ldapConnection, parentDN);
+            services.put(parentDN, ldapService);
+        }
+        return ldapService;
+    }
+
+    /**
+     * Reads and binds go round-robin over the replicas; modifies go to the supplier and fail over to the replicas in
+     * the given order while it is down. All servers listen on the same port.
+     */
+    public static LDAPService createReplicatedService(String supplierHost, String[] replicaHosts, int port, String parentDN) throws LDAPException {
+        LDAPPoolConfig config = new LDAPPoolConfig();
+        int[] replicaPorts = new int[replicaHosts.length];
+        Arrays.fill(replicaPorts, port);
+        String[] writeHosts = new String[replicaHosts.length + 1];
+        writeHosts[0] = supplierHost;
+        System.arraycopy(replicaHosts, 0, writeHosts, 1, replicaHosts.length);
+        int[] writePorts = new int[writeHosts.length];
+        Arrays.fill(writePorts, port);
+
+        LDAPConnectionPool readPool = LDAPConnectionPools.createAdminPool(LDAPServerSets.replicas(replicaHosts, replicaPorts, LDAPServerSets.LoadBalancing.ROUND_ROBIN, config),
+                LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD, config);
+        LDAPConnectionPool writePool = LDAPConnectionPools.createWritePool(LDAPServerSets.failover(writeHosts, writePorts, config),
+                LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD, config);
+        LDAPConnectionPool bindPool = LDAPConnectionPools.createBindPool(LDAPServerSets.replicas(replicaHosts, replicaPorts, LDAPServerSets.LoadBalancing.ROUND_ROBIN, config), config);
+        return new LDAPService(readPool, writePool, bindPool, parentDN);
+    }
+
     public static void main(String[] args) {
         LDAPConnection ldapConnection;
         try {
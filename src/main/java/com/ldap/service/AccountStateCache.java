@@ -0,0 +1,781 @@
+package com.ldap.service;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.RDN;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Local copy of the account state of every user under a base DN, so status checks are memory lookups instead of
+ * directory searches. It is filled with one paged search ({@link #load}) and kept current either from a persistent
+ * search ({@link #startPersistentSearch}, which runs the load itself) or by replaying {@code cn=changelog}
+ * ({@link #pollChangelog}).
+ * <p>
+ * Users live in an open-addressing table of parallel arrays keyed by a 64-bit hash of the lower-cased uid, with
+ * flags, {@code pwdChangedTime} and an index into the few distinct policy DNs stored as primitives. Readers take an
+ * optimistic {@link StampedLock} read and do not block each other. A user whose data has not been confirmed within
+ * {@code maxStalenessMillis} is reported as missing, so callers fall back to the directory.
+ * <p>
+ * Every invalidation or feed update bumps a counter in one of {@code INVALIDATION_STRIPES} stripes chosen by the uid
+ * hash. A caller that fills the cache after a miss takes the stripe's {@link #invalidationStamp} before reading the
+ * directory, and {@link #put(String, UserAccountSnapshot, long)} drops its snapshot if the stamp has moved since, so a
+ * read that raced a modify never writes the old state back.
+ */
+public class AccountStateCache implements Closeable {
+
+    public static final long DEFAULT_MAX_STALENESS_MILLIS = 60L * 1000L;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    static final String[] ATTRIBUTES = {"uid", UserAccountSnapshot.NS_ACCOUNT_LOCK, UserAccountSnapshot.ACCOUNT_UNLOCK_TIME,
+            UserAccountSnapshot.PWD_CHANGED_TIME, UserAccountSnapshot.PASSWORD_POLICY_SUBENTRY};
+
+    private static final byte NS_ACCOUNT_LOCK_PRESENT = 1;
+    private static final byte NS_ACCOUNT_LOCK_TRUE = 2;
+    private static final byte ACCOUNT_UNLOCK_TIME_TRUE = 4;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    private final String baseDN;
+    private final long maxStalenessMillis;
+    private final StampedLock lock = new StampedLock();
+    private final List<String> policyDNs = new ArrayList<String>();
+    private final Map<String, Integer> policyIndexes = new HashMap<String, Integer>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleReads = new AtomicLong();
+    private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private volatile long syncedAt = NO_TIME;
+    private volatile boolean persistentSearchActive;
+    private long lastChangeNumber = -1L;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private volatile LDAPMetricsRegistry metricsRegistry = LDAPMetricsRegistry.NONE;
+    private ScheduledExecutorService scheduler;
+    private boolean polling;
+    private LDAPConnection persistentSearchConnection;
+    private AsyncRequestID persistentSearchID;
+    private final Object pendingChangesLock = new Object();
+    private List<SearchResultEntry> pendingChanges;
+
+    public AccountStateCache(String baseDN) {
+        this(baseDN, DEFAULT_MAX_STALENESS_MILLIS);
+    }
+
+    public AccountStateCache(String baseDN, long maxStalenessMillis) {
+        this.baseDN = baseDN;
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Reports every changelog poll and persistent search heartbeat, and every change notification that could not be
+     * applied, as {@link LDAPMetricsRegistry#ACCOUNT_STATE_SYNC}, so a feed that keeps failing shows up as failures
+     * rather than only as a falling hit rate.
+     */
+    public void setMetricsRegistry(LDAPMetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * @return the cached snapshot, or {@code null} when the user is unknown to the cache or its data is older than
+     * the staleness bound
+     */
+    public UserAccountSnapshot get(String username) {
+        long hash = hash(username);
+        long stamp = lock.tryOptimisticRead();
+        Slot slot = read(username, hash);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                slot = read(username, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (slot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        long confirmedAt = Math.max(slot.loadedAt, syncedAt);
+        if (confirmedAt < System.currentTimeMillis() - maxStalenessMillis) {
+            staleReads.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return slot.toSnapshot();
+    }
+
+    /**
+     * Stores a snapshot known to be current, e.g. one delivered by a change feed.
+     */
+    public void put(String username, UserAccountSnapshot snapshot) {
+        long hash = hash(username);
+        long stamp = lock.writeLock();
+        try {
+            invalidations.incrementAndGet(stripe(hash));
+            store(username, snapshot, System.currentTimeMillis());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the value to hand to {@link #put(String, UserAccountSnapshot, long)} for a snapshot read from the
+     * directory after this call
+     */
+    public long invalidationStamp(String username) {
+        return invalidations.get(stripe(hash(username)));
+    }
+
+    /**
+     * Stores a snapshot just read from the directory, e.g. after a stale or missing lookup, unless the user may have
+     * been changed or invalidated since {@code invalidationStamp} was taken.
+     *
+     * @return whether the snapshot was stored
+     */
+    public boolean put(String username, UserAccountSnapshot snapshot, long invalidationStamp) {
+        long hash = hash(username);
+        long stamp = lock.writeLock();
+        try {
+            if (invalidations.get(stripe(hash)) != invalidationStamp) {
+                return false;
+            }
+            store(username, snapshot, System.currentTimeMillis());
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void invalidate(String username) {
+        long hash = hash(username);
+        long stamp = lock.writeLock();
+        try {
+            invalidations.incrementAndGet(stripe(hash));
+            table.remove(username, hash);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getStaleReadCount() {
+        return staleReads.get();
+    }
+
+    /**
+     * Reads every user under the base DN with a paged search on the given admin-bound connection. The changelog
+     * position is taken first, so changes made while loading are replayed by the next {@link #pollChangelog}.
+     *
+     * @return the number of users loaded
+     */
+    public long load(LDAPConnection connection) throws LDAPException {
+        long startedAt = System.currentTimeMillis();
+        Long changeNumber = changelogPosition(connection, "lastChangeNumber");
+        final long[] loaded = new long[1];
+        final long loadedAt = startedAt;
+        SearchRequest searchRequest = new SearchRequest(new SearchResultListener() {
+            @Override
+            public void searchEntryReturned(SearchResultEntry searchEntry) {
+                String uid = searchEntry.getAttributeValue("uid");
+                if (uid != null) {
+                    long stamp = lock.writeLock();
+                    try {
+                        store(uid, UserAccountSnapshot.fromEntry(searchEntry), loadedAt);
+                    } finally {
+                        lock.unlockWrite(stamp);
+                    }
+                    loaded[0]++;
+                }
+            }
+
+            @Override
+            public void searchReferenceReturned(SearchResultReference searchReference) {
+            }
+        }, baseDN, SearchScope.SUB, "(uid=*)", ATTRIBUTES);
+
+        ASN1OctetString cookie = null;
+        do {
+            searchRequest.setControls(new SimplePagedResultsControl(pageSize, cookie, true));
+            SearchResult searchResult = connection.search(searchRequest);
+            SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+            if (responseControl == null) {
+                throw new LDAPException(ResultCode.CONTROL_NOT_FOUND, "The server did not return a paged results response control");
+            }
+            cookie = responseControl.moreResultsToReturn() ? responseControl.getCookie() : null;
+        } while (cookie != null);
+
+        synchronized (this) {
+            if (changeNumber != null) {
+                lastChangeNumber = changeNumber;
+            }
+        }
+        syncedAt = startedAt;
+        return loaded[0];
+    }
+
+    /**
+     * Applies every {@code cn=changelog} entry recorded since the last load or poll by re-reading the changed users.
+     * If the changelog has been trimmed past that point, the cache is emptied and loaded again.
+     *
+     * @return the number of changes applied
+     */
+    public synchronized int pollChangelog(LDAPConnection connection) throws LDAPException {
+        long startedAt = System.currentTimeMillis();
+        Long first = changelogPosition(connection, "firstChangeNumber");
+        Long last = changelogPosition(connection, "lastChangeNumber");
+        if (first == null || last == null) {
+            throw new LDAPException(ResultCode.UNWILLING_TO_PERFORM, "The server does not publish a change log");
+        }
+        if (lastChangeNumber < 0 || first > lastChangeNumber + 1) {
+            clear();
+            load(connection);
+            return 0;
+        }
+
+        int applied = 0;
+        for (long changeNumber = lastChangeNumber + 1; changeNumber <= last; changeNumber++) {
+            SearchResultEntry change = connection.getEntry(String.format("changeNumber=%d,cn=changelog", changeNumber),
+                    "targetDN", "changeType", "newRDN", "newSuperior");
+            if (change != null) {
+                applyChange(connection, change);
+                applied++;
+            }
+            lastChangeNumber = changeNumber;
+        }
+        syncedAt = startedAt;
+        return applied;
+    }
+
+    /**
+     * Polls the changelog every {@code intervalMillis} on a connection borrowed from the admin pool.
+     */
+    public synchronized void startChangelogPolling(final LDAPConnectionPool adminPool, long intervalMillis) {
+        if (polling) {
+            return;
+        }
+        polling = true;
+        scheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                LDAPConnection connection = null;
+                long startNanos = System.nanoTime();
+                try {
+                    connection = adminPool.getConnection();
+                    pollChangelog(connection);
+                    adminPool.releaseConnection(connection);
+                    metricsRegistry.recordOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC, ResultCode.SUCCESS, System.nanoTime() - startNanos);
+                } catch (LDAPException le) {
+                    metricsRegistry.recordOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC, le.getResultCode(), System.nanoTime() - startNanos);
+                    System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+                    if (connection != null) {
+                        adminPool.releaseConnectionAfterException(connection, le);
+                    }
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a persistent search for changes under the base DN on the given connection, which must be bound with
+     * rights to read the account attributes and is dedicated to this cache until {@link #close()}, and then loads the
+     * cache over it; there is no need to call {@link #load} first. Changes that arrive while loading are held back and
+     * applied once the load is done, so nothing made between the two is lost or overwritten by older loaded data.
+     * <p>
+     * Each change received confirms the whole cache, and so does a heartbeat read sent on the connection every third of
+     * {@code maxStalenessMillis}: responses arrive in order, so its answer means every earlier notification has been
+     * applied. If the search ends or the connection stalls, users go stale within the bound as with polling.
+     *
+     * @return the number of users loaded
+     */
+    public long startPersistentSearch(LDAPConnection connection) throws LDAPException {
+        SearchRequest searchRequest = new SearchRequest(new AccountChangeListener(), baseDN, SearchScope.SUB, "(uid=*)", ATTRIBUTES);
+        searchRequest.addControl(new PersistentSearchRequestControl(PersistentSearchChangeType.allChangeTypes(), true, true));
+        synchronized (this) {
+            synchronized (pendingChangesLock) {
+                pendingChanges = new ArrayList<SearchResultEntry>();
+            }
+            persistentSearchID = connection.asyncSearch(searchRequest);
+            persistentSearchConnection = connection;
+            persistentSearchActive = true;
+        }
+
+        long loaded;
+        try {
+            loaded = load(connection);
+            startHeartbeat(connection);
+        } catch (LDAPException le) {
+            stopPersistentSearch();
+            throw le;
+        } finally {
+            synchronized (pendingChangesLock) {
+                List<SearchResultEntry> changes = pendingChanges;
+                pendingChanges = null;
+                for (SearchResultEntry change : changes) {
+                    applyNotification(change);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            polling = false;
+        }
+        stopPersistentSearch();
+    }
+
+    private synchronized void startHeartbeat(final LDAPConnection connection) {
+        long intervalMillis = Math.max(1L, maxStalenessMillis / 3);
+        scheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (!persistentSearchActive) {
+                    return;
+                }
+                long sentAt = System.currentTimeMillis();
+                long startNanos = System.nanoTime();
+                try {
+                    connection.getEntry("", "1.1");
+                    metricsRegistry.recordOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC, ResultCode.SUCCESS, System.nanoTime() - startNanos);
+                    if (persistentSearchActive) {
+                        confirm(sentAt);
+                    }
+                } catch (LDAPException le) {
+                    metricsRegistry.recordOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC, le.getResultCode(), System.nanoTime() - startNanos);
+                    System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "account-state-cache");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Not locked, so the listener thread never waits on a poll; a racing writer can only move the mark back slightly.
+     */
+    private void confirm(long confirmedAt) {
+        if (confirmedAt > syncedAt) {
+            syncedAt = confirmedAt;
+        }
+    }
+
+    private synchronized void stopPersistentSearch() {
+        if (persistentSearchConnection != null) {
+            persistentSearchActive = false;
+            try {
+                persistentSearchConnection.abandon(persistentSearchID);
+            } catch (LDAPException le) {
+                System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+            }
+            persistentSearchConnection = null;
+        }
+    }
+
+    private void applyChange(LDAPConnection connection, Entry change) throws LDAPException {
+        String targetDN = change.getAttributeValue("targetDN");
+        if (targetDN == null || !DN.isDescendantOf(targetDN, baseDN, false)) {
+            return;
+        }
+
+        String changeType = change.getAttributeValue("changeType");
+        if ("delete".equalsIgnoreCase(changeType)) {
+            removeByDN(targetDN);
+            return;
+        }
+        if ("modrdn".equalsIgnoreCase(changeType) || "moddn".equalsIgnoreCase(changeType)) {
+            removeByDN(targetDN);
+            String newSuperior = change.getAttributeValue("newSuperior");
+            String parentDN = newSuperior != null ? newSuperior : new DN(targetDN).getParentString();
+            targetDN = new DN(new RDN(change.getAttributeValue("newRDN")), new DN(parentDN)).toString();
+        }
+
+        SearchResultEntry entry = connection.getEntry(targetDN, ATTRIBUTES);
+        if (entry == null || entry.getAttributeValue("uid") == null) {
+            removeByDN(targetDN);
+        } else {
+            put(entry.getAttributeValue("uid"), UserAccountSnapshot.fromEntry(entry));
+        }
+    }
+
+    /**
+     * Drops the user stored under the DN. Users are normally named by their uid, which is the table key, so the slot
+     * is found directly; only for another naming attribute is the table scanned, under the read lock, which does not
+     * disturb optimistic readers.
+     */
+    private void removeByDN(String dn) throws LDAPException {
+        DN targetDN = new DN(dn);
+        String uid = rdnUid(targetDN.getRDN());
+        if (uid == null) {
+            uid = findUid(targetDN);
+            if (uid == null) {
+                return;
+            }
+        }
+
+        long hash = hash(uid);
+        long stamp = lock.writeLock();
+        try {
+            invalidations.incrementAndGet(stripe(hash));
+            Table current = table;
+            int index = current.find(uid, hash);
+            if (index >= 0 && (current.dns[index] == null || targetDN.equals(new DN(current.dns[index])))) {
+                current.remove(uid, hash);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static String rdnUid(RDN rdn) {
+        if (rdn == null) {
+            return null;
+        }
+        String[] names = rdn.getAttributeNames();
+        for (int i = 0; i < names.length; i++) {
+            if ("uid".equalsIgnoreCase(names[i])) {
+                return rdn.getAttributeValues()[i];
+            }
+        }
+        return null;
+    }
+
+    private String findUid(DN targetDN) throws LDAPException {
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            for (int index = 0; index < current.keys.length; index++) {
+                if (current.keys[index] != 0L && current.dns[index] != null && targetDN.equals(new DN(current.dns[index]))) {
+                    return current.uids[index];
+                }
+            }
+            return null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(MIN_CAPACITY);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static Long changelogPosition(LDAPConnection connection, String attribute) throws LDAPException {
+        SearchResultEntry rootDSE = connection.getEntry("", attribute);
+        return rootDSE != null ? rootDSE.getAttributeValueAsLong(attribute) : null;
+    }
+
+    /**
+     * Must be called with the write lock held; the policy index map is only touched under it.
+     */
+    private void store(String username, UserAccountSnapshot snapshot, long loadedAt) {
+        byte flags = 0;
+        String nsAccountLock = snapshot.getNsAccountLock();
+        if (nsAccountLock != null) {
+            flags |= NS_ACCOUNT_LOCK_PRESENT;
+            if (!snapshot.isActivate()) {
+                flags |= NS_ACCOUNT_LOCK_TRUE;
+            }
+        }
+        if (snapshot.isLocked()) {
+            flags |= ACCOUNT_UNLOCK_TIME_TRUE;
+        }
+        Date pwdChangedTime = snapshot.getPwdChangedTime();
+
+        Table current = table;
+        if ((current.size + 1) * 4 > current.keys.length * 3) {
+            current = current.resize(current.keys.length * 2);
+            table = current;
+        }
+        current.put(username, hash(username), snapshot.getDN(), flags, pwdChangedTime != null ? pwdChangedTime.getTime() : NO_TIME,
+                policyIndex(snapshot.getPasswordPolicySubentry()), loadedAt);
+    }
+
+    private int policyIndex(String policyDN) {
+        if (policyDN == null) {
+            return -1;
+        }
+        Integer index = policyIndexes.get(policyDN);
+        if (index == null) {
+            synchronized (policyDNs) {
+                index = policyDNs.size();
+                policyDNs.add(policyDN);
+            }
+            policyIndexes.put(policyDN, index);
+        }
+        return index;
+    }
+
+    private Slot read(String username, long hash) {
+        Table current = table;
+        int index = current.find(username, hash);
+        if (index < 0) {
+            return null;
+        }
+        int policyIndex = current.policies[index];
+        String policyDN = null;
+        if (policyIndex >= 0) {
+            synchronized (policyDNs) {
+                policyDN = policyIndex < policyDNs.size() ? policyDNs.get(policyIndex) : null;
+            }
+        }
+        return new Slot(current.dns[index], current.flags[index], current.pwdChangedTimes[index], policyDN, current.loadedAt[index]);
+    }
+
+    private static int stripe(long hash) {
+        return (int) (hash >>> 32) & (INVALIDATION_STRIPES - 1);
+    }
+
+    /**
+     * FNV-1a over the lower-cased characters, with a final avalanche step; 0 marks an empty slot and is never returned.
+     */
+    static long hash(String username) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < username.length(); i++) {
+            hash ^= Character.toLowerCase(username.charAt(i));
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash == 0L ? 1L : hash;
+    }
+
+    private void applyNotification(SearchResultEntry searchEntry) {
+        long receivedAt = System.currentTimeMillis();
+        try {
+            EntryChangeNotificationControl changeControl = EntryChangeNotificationControl.get(searchEntry);
+            if (changeControl != null && changeControl.getPreviousDN() != null) {
+                removeByDN(changeControl.getPreviousDN());
+            }
+            if (changeControl != null && changeControl.getChangeType() == PersistentSearchChangeType.DELETE) {
+                removeByDN(searchEntry.getDN());
+            } else if (searchEntry.getAttributeValue("uid") != null) {
+                put(searchEntry.getAttributeValue("uid"), UserAccountSnapshot.fromEntry(searchEntry));
+            }
+            confirm(receivedAt);
+        } catch (LDAPException le) {
+            metricsRegistry.recordOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC, le.getResultCode(), 0L);
+            System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+        }
+    }
+
+    private final class AccountChangeListener implements AsyncSearchResultListener {
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            synchronized (pendingChangesLock) {
+                if (pendingChanges != null) {
+                    pendingChanges.add(searchEntry);
+                    return;
+                }
+            }
+            applyNotification(searchEntry);
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+        }
+
+        @Override
+        public void searchResultReceived(AsyncRequestID requestID, SearchResult searchResult) {
+            if (persistentSearchActive) {
+                metricsRegistry.recordOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC,
+                        searchResult.getResultCode() == ResultCode.SUCCESS ? ResultCode.OTHER : searchResult.getResultCode(), 0L);
+            }
+            System.out.println(String.format("Account state persistent search ended: %s - %s", searchResult.getResultCode(), searchResult.getDiagnosticMessage()));
+            persistentSearchActive = false;
+        }
+    }
+
+    private final class Slot {
+        private final String dn;
+        private final byte flags;
+        private final long pwdChangedTime;
+        private final String policyDN;
+        private final long loadedAt;
+
+        private Slot(String dn, byte flags, long pwdChangedTime, String policyDN, long loadedAt) {
+            this.dn = dn;
+            this.flags = flags;
+            this.pwdChangedTime = pwdChangedTime;
+            this.policyDN = policyDN;
+            this.loadedAt = loadedAt;
+        }
+
+        private UserAccountSnapshot toSnapshot() {
+            String nsAccountLock = (flags & NS_ACCOUNT_LOCK_PRESENT) == 0 ? null : (flags & NS_ACCOUNT_LOCK_TRUE) != 0 ? "true" : "false";
+            Boolean accountUnlockTime = (flags & ACCOUNT_UNLOCK_TIME_TRUE) != 0 ? Boolean.TRUE : null;
+            return new UserAccountSnapshot(dn, nsAccountLock, accountUnlockTime, pwdChangedTime == NO_TIME ? null : new Date(pwdChangedTime), policyDN, null);
+        }
+    }
+
+    /**
+     * Linear-probing hash table; writers hold the cache's write lock, readers validate an optimistic stamp.
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final String[] uids;
+        private final String[] dns;
+        private final byte[] flags;
+        private final long[] pwdChangedTimes;
+        private final int[] policies;
+        private final long[] loadedAt;
+        private int size;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            uids = new String[capacity];
+            dns = new String[capacity];
+            flags = new byte[capacity];
+            pwdChangedTimes = new long[capacity];
+            policies = new int[capacity];
+            loadedAt = new long[capacity];
+        }
+
+        private int find(String uid, long hash) {
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                long key = keys[index];
+                if (key == 0L) {
+                    return -1;
+                }
+                if (key == hash && uid.equalsIgnoreCase(uids[index])) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void put(String uid, long hash, String dn, byte flag, long pwdChangedTime, int policy, long loaded) {
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            while (keys[index] != 0L && !(keys[index] == hash && uid.equalsIgnoreCase(uids[index]))) {
+                index = (index + 1) & mask;
+            }
+            if (keys[index] == 0L) {
+                size++;
+            }
+            keys[index] = hash;
+            uids[index] = uid;
+            dns[index] = dn;
+            flags[index] = flag;
+            pwdChangedTimes[index] = pwdChangedTime;
+            policies[index] = policy;
+            loadedAt[index] = loaded;
+        }
+
+        /**
+         * Removes the slot and shifts later members of its probe run back, so no tombstones are needed.
+         */
+        private void remove(String uid, long hash) {
+            int index = find(uid, hash);
+            if (index < 0) {
+                return;
+            }
+            int mask = keys.length - 1;
+            int next = (index + 1) & mask;
+            while (keys[next] != 0L) {
+                int home = (int) keys[next] & mask;
+                boolean movable = index <= next ? (home <= index || home > next) : (home <= index && home > next);
+                if (movable) {
+                    move(next, index);
+                    index = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[index] = 0L;
+            uids[index] = null;
+            dns[index] = null;
+            size--;
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            uids[to] = uids[from];
+            dns[to] = dns[from];
+            flags[to] = flags[from];
+            pwdChangedTimes[to] = pwdChangedTimes[from];
+            policies[to] = policies[from];
+            loadedAt[to] = loadedAt[from];
+        }
+
+        private Table resize(int capacity) {
+            Table resized = new Table(capacity);
+            for (int index = 0; index < keys.length; index++) {
+                if (keys[index] != 0L) {
+                    resized.put(uids[index], keys[index], dns[index], flags[index], pwdChangedTimes[index], policies[index], loadedAt[index]);
+                }
+            }
+            return resized;
+        }
+    }
+}
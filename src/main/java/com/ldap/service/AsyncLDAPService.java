@@ -0,0 +1,561 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Non-blocking view of a pooled {@link LDAPService}. Searches and modifies are sent with the SDK's asynchronous
+ * request API, so no thread waits on the network; the connection is returned to its pool when the response arrives.
+ * The uid resolver, password policy cache, authenticator and metrics registry of the wrapped service are shared.
+ * <p>
+ * Every request carries a response timeout ({@link #withTimeout(long)} gives a view with a different one); a
+ * request that times out fails its future with {@link ResultCode#TIMEOUT}. Cancelling a returned future abandons
+ * the request in flight. Connections are checked out off the calling thread, so a caller never waits for an exhausted
+ * pool, and futures are completed on an executor, so no callback runs on an SDK connection reader thread.
+ * <p>
+ * By default each pool gets its own checkout threads, as many as it has connections, and futures are completed on
+ * the common pool. A checkout blocked on an exhausted pool then holds up neither completions nor checkouts from the
+ * other pool.
+ */
+public class AsyncLDAPService {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000L;
+
+    private final LDAPService ldapService;
+    private final long timeoutMillis;
+    private final Executor readCheckOuts;
+    private final Executor writeCheckOuts;
+    private final Executor executor;
+
+    public AsyncLDAPService(LDAPService ldapService) {
+        this(requirePools(ldapService), DEFAULT_TIMEOUT_MILLIS, checkOutExecutor(ldapService.getReadPool()),
+                ldapService.getWritePool() == ldapService.getReadPool() ? null : checkOutExecutor(ldapService.getWritePool()),
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Checks connections out and completes futures on {@code executor}. A checkout waits up to the pool's max wait
+     * time for a connection, so {@code executor} should have threads to spare for completions.
+     */
+    public AsyncLDAPService(LDAPService ldapService, long timeoutMillis, Executor executor) {
+        this(requirePools(ldapService), timeoutMillis, executor, executor, executor);
+    }
+
+    private AsyncLDAPService(LDAPService ldapService, long timeoutMillis, Executor readCheckOuts, Executor writeCheckOuts, Executor executor) {
+        this.ldapService = ldapService;
+        this.timeoutMillis = timeoutMillis;
+        this.readCheckOuts = readCheckOuts;
+        this.writeCheckOuts = writeCheckOuts != null ? writeCheckOuts : readCheckOuts;
+        this.executor = executor;
+    }
+
+    private static LDAPService requirePools(LDAPService ldapService) {
+        if (ldapService.getReadPool() == null || ldapService.getWritePool() == null) {
+            throw new IllegalArgumentException("AsyncLDAPService needs an LDAPService built from connection pools");
+        }
+        return ldapService;
+    }
+
+    /**
+     * @return daemon threads for checkouts from {@code pool}, one per connection it may hold; idle threads exit
+     */
+    private static Executor checkOutExecutor(LDAPConnectionPool pool) {
+        int threads = Math.max(1, pool.getMaximumAvailableConnections());
+        ThreadPoolExecutor checkOuts = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "async-ldap-checkout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        checkOuts.allowCoreThreadTimeOut(true);
+        return checkOuts;
+    }
+
+    /**
+     * @return a view of the same service whose requests time out after {@code timeoutMillis}
+     */
+    public AsyncLDAPService withTimeout(long timeoutMillis) {
+        return new AsyncLDAPService(ldapService, timeoutMillis, readCheckOuts, writeCheckOuts, executor);
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Binds are not available asynchronously in the SDK; see {@link LDAPAuthenticator#authenticateAsync}.
+     */
+    public CompletableFuture<AuthenticationResult> authenticate(String username, String password) {
+        return ldapService.getAuthenticator().authenticateAsync(username, password);
+    }
+
+    /**
+     * @return a future for the snapshot, completing with {@code null} when no entry has the given uid
+     */
+    public CompletableFuture<UserAccountSnapshot> getUserAccountSnapshot(final String username) {
+        return run(new Steps<UserAccountSnapshot>() {
+            @Override
+            public CompletableFuture<UserAccountSnapshot> start(Operation<UserAccountSnapshot> operation) {
+                return userEntry(operation, username, true).thenApply(new Function<SearchResultEntry, UserAccountSnapshot>() {
+                    @Override
+                    public UserAccountSnapshot apply(SearchResultEntry entry) {
+                        return entry != null ? UserAccountSnapshot.fromEntry(entry) : null;
+                    }
+                });
+            }
+        });
+    }
+
+    public CompletableFuture<String> currentUserStatus(final String username) {
+        return run(new Steps<String>() {
+            @Override
+            public CompletableFuture<String> start(Operation<String> operation) {
+                return accountSnapshot(operation, username).thenApply(new Function<UserAccountSnapshot, String>() {
+                    @Override
+                    public String apply(UserAccountSnapshot snapshot) {
+                        return snapshot.getStatus();
+                    }
+                });
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> isAccountLocked(final String username) {
+        return run(new Steps<Boolean>() {
+            @Override
+            public CompletableFuture<Boolean> start(Operation<Boolean> operation) {
+                return accountSnapshot(operation, username).thenApply(new Function<UserAccountSnapshot, Boolean>() {
+                    @Override
+                    public Boolean apply(UserAccountSnapshot snapshot) {
+                        return snapshot.isLocked();
+                    }
+                });
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> isAccountActivate(final String username) {
+        return run(new Steps<Boolean>() {
+            @Override
+            public CompletableFuture<Boolean> start(Operation<Boolean> operation) {
+                return accountSnapshot(operation, username).thenApply(new Function<UserAccountSnapshot, Boolean>() {
+                    @Override
+                    public Boolean apply(UserAccountSnapshot snapshot) {
+                        return snapshot.isActivate();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return a future for the expiration date, completing with {@code null} when the user's policy has no
+     * {@code pwdMaxAge} or the user has no {@code pwdChangedTime}
+     */
+    public CompletableFuture<Date> getUserAccountExpirationDate(final String username) {
+        return run(new Steps<Date>() {
+            @Override
+            public CompletableFuture<Date> start(final Operation<Date> operation) {
+                return accountSnapshot(operation, username).thenCompose(new Function<UserAccountSnapshot, CompletableFuture<Date>>() {
+                    @Override
+                    public CompletableFuture<Date> apply(final UserAccountSnapshot snapshot) {
+                        return pwdMaxAge(operation, snapshot.getEffectivePasswordPolicy()).thenApply(new Function<Integer, Date>() {
+                            @Override
+                            public Date apply(Integer pwdMaxAge) {
+                                return pwdMaxAge != null ? snapshot.getExpirationDate(pwdMaxAge) : null;
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    public CompletableFuture<LDAPResult> inactivateAccount(String username) {
+        return modify(username, ldapService.inactivateModifications());
+    }
+
+    public CompletableFuture<LDAPResult> activateAccount(String username) {
+        return modify(username, ldapService.activateModifications());
+    }
+
+    public CompletableFuture<LDAPResult> updateUserPassword(String username, String password) {
+        return modify(username, ldapService.passwordModifications(password));
+    }
+
+    private CompletableFuture<LDAPResult> modify(final String username, final Modification[] modifications) {
+        return run(new Steps<LDAPResult>() {
+            @Override
+            public CompletableFuture<LDAPResult> start(final Operation<LDAPResult> operation) {
+                return resolveDN(operation, username).thenCompose(new Function<String, CompletableFuture<LDAPResult>>() {
+                    @Override
+                    public CompletableFuture<LDAPResult> apply(String userDN) {
+                        if (userDN == null) {
+                            throw new CompletionException(new LDAPException(ResultCode.NO_SUCH_OBJECT,
+                                    String.format("No entry with uid %s under %s", username, ldapService.getParentDN())));
+                        }
+                        return operation.track(modify(new ModifyRequest(userDN, modifications))).whenComplete(new BiConsumer<LDAPResult, Throwable>() {
+                            @Override
+                            public void accept(LDAPResult result, Throwable failure) {
+                                ldapService.invalidateAccountState(Collections.singleton(username));
+                                if (failure != null && resultCodeOf(failure) == ResultCode.NO_SUCH_OBJECT) {
+                                    ldapService.getUidDnResolver().invalidate(username);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    private CompletableFuture<UserAccountSnapshot> accountSnapshot(Operation<?> operation, String username) {
+        return userEntry(operation, username, true).thenApply(new Function<SearchResultEntry, UserAccountSnapshot>() {
+            @Override
+            public UserAccountSnapshot apply(SearchResultEntry entry) {
+                return entry != null ? UserAccountSnapshot.fromEntry(entry) : new UserAccountSnapshot(null, null, null, null, null, null);
+            }
+        });
+    }
+
+    /**
+     * Reads the user's account-state attributes; a cached DN whose entry has gone away is resolved again once.
+     */
+    private CompletableFuture<SearchResultEntry> userEntry(final Operation<?> operation, final String username, final boolean retry) {
+        return resolveDN(operation, username).thenCompose(new Function<String, CompletableFuture<SearchResultEntry>>() {
+            @Override
+            public CompletableFuture<SearchResultEntry> apply(String userDN) {
+                if (userDN == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return getEntry(operation, userDN, UserAccountSnapshot.ATTRIBUTES).thenCompose(new Function<SearchResultEntry, CompletableFuture<SearchResultEntry>>() {
+                    @Override
+                    public CompletableFuture<SearchResultEntry> apply(SearchResultEntry entry) {
+                        if (entry != null || !retry) {
+                            return CompletableFuture.completedFuture(entry);
+                        }
+                        ldapService.getUidDnResolver().invalidate(username);
+                        return userEntry(operation, username, false);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Answers from the uid resolver when it remembers the uid, including uids it remembers as unknown.
+     */
+    private CompletableFuture<String> resolveDN(Operation<?> operation, final String username) {
+        final UidDnResolver uidDnResolver = ldapService.getUidDnResolver();
+        String cachedDN = uidDnResolver.getCachedDN(username);
+        if (cachedDN != null) {
+            return CompletableFuture.completedFuture(cachedDN);
+        }
+        if (uidDnResolver.isCachedAsMissing(username)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Filter filter = LDAPRequestTemplates.uidFilter(username);
+        return operation.track(search(ldapService.getParentDN(), SearchScope.SUB, filter, LDAPRequestTemplates.NO_ATTRIBUTES, LDAPMetricsRegistry.SUBTREE_SEARCH))
+                .thenApply(new Function<List<SearchResultEntry>, String>() {
+                    @Override
+                    public String apply(List<SearchResultEntry> entries) {
+                        String userDN = entries.isEmpty() ? null : entries.get(0).getDN();
+                        uidDnResolver.remember(username, userDN);
+                        return userDN;
+                    }
+                });
+    }
+
+    private CompletableFuture<Integer> pwdMaxAge(Operation<?> operation, final String policyDN) {
+        final PasswordPolicyCache passwordPolicyCache = ldapService.getPasswordPolicyCache();
+        Integer cached = passwordPolicyCache.getCachedPwdMaxAge(policyDN);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return getEntry(operation, policyDN, "pwdMaxAge").thenApply(new Function<SearchResultEntry, Integer>() {
+            @Override
+            public Integer apply(SearchResultEntry entry) {
+                Integer pwdMaxAge = entry != null ? entry.getAttributeValueAsInteger("pwdMaxAge") : null;
+                if (pwdMaxAge != null) {
+                    passwordPolicyCache.put(policyDN, pwdMaxAge);
+                }
+                return pwdMaxAge;
+            }
+        });
+    }
+
+    /**
+     * @return a future for the entry, completing with {@code null} when it does not exist
+     */
+    private CompletableFuture<SearchResultEntry> getEntry(Operation<?> operation, String entryDN, String... attributes) {
+        return operation.track(search(entryDN, SearchScope.BASE, LDAPRequestTemplates.ANY_OBJECT, attributes, LDAPMetricsRegistry.BASE_SEARCH))
+                .handle(new BiFunction<List<SearchResultEntry>, Throwable, SearchResultEntry>() {
+                    @Override
+                    public SearchResultEntry apply(List<SearchResultEntry> entries, Throwable failure) {
+                        if (failure == null) {
+                            return entries.isEmpty() ? null : entries.get(0);
+                        }
+                        if (resultCodeOf(failure) == ResultCode.NO_SUCH_OBJECT) {
+                            return null;
+                        }
+                        throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+                    }
+                });
+    }
+
+    /**
+     * Sends the search on a read-pool connection; the listener collects the entries, which are expected to be few.
+     */
+    private CompletableFuture<List<SearchResultEntry>> search(final String baseDN, final SearchScope scope, final Filter filter, final String[] attributes, final String metric) {
+        final CompletableFuture<List<SearchResultEntry>> future = new CompletableFuture<List<SearchResultEntry>>();
+        final LDAPConnectionPool pool = ldapService.getReadPool();
+        final long startNanos = System.nanoTime();
+        checkOut(pool, readCheckOuts, future, new Send() {
+            @Override
+            public void send(final InFlight inFlight) {
+                final List<SearchResultEntry> entries = new ArrayList<SearchResultEntry>(1);
+                SearchRequest searchRequest = new SearchRequest(new AsyncSearchResultListener() {
+                    @Override
+                    public void searchEntryReturned(SearchResultEntry searchEntry) {
+                        entries.add(searchEntry);
+                    }
+
+                    @Override
+                    public void searchReferenceReturned(SearchResultReference searchReference) {
+                    }
+
+                    @Override
+                    public void searchResultReceived(AsyncRequestID requestID, SearchResult searchResult) {
+                        ldapService.getMetricsRegistry().recordOperation(metric, searchResult.getResultCode(), System.nanoTime() - startNanos);
+                        inFlight.release();
+                        complete(future, searchResult, entries);
+                    }
+                }, baseDN, scope, filter, attributes);
+                searchRequest.setResponseTimeoutMillis(timeoutMillis);
+
+                try {
+                    inFlight.sent(future, inFlight.connection.asyncSearch(searchRequest));
+                } catch (LDAPException le) {
+                    ldapService.getMetricsRegistry().recordOperation(metric, le.getResultCode(), System.nanoTime() - startNanos);
+                    inFlight.releaseAfterException(le);
+                    future.completeExceptionally(le);
+                }
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<LDAPResult> modify(final ModifyRequest modifyRequest) {
+        final CompletableFuture<LDAPResult> future = new CompletableFuture<LDAPResult>();
+        final LDAPConnectionPool pool = ldapService.getWritePool();
+        final long startNanos = System.nanoTime();
+        modifyRequest.setResponseTimeoutMillis(timeoutMillis);
+        checkOut(pool, writeCheckOuts, future, new Send() {
+            @Override
+            public void send(final InFlight inFlight) {
+                try {
+                    inFlight.sent(future, inFlight.connection.asyncModify(modifyRequest, new AsyncResultListener() {
+                        @Override
+                        public void ldapResultReceived(AsyncRequestID requestID, LDAPResult ldapResult) {
+                            ldapService.getMetricsRegistry().recordOperation(LDAPMetricsRegistry.ASYNC_MODIFY, ldapResult.getResultCode(), System.nanoTime() - startNanos);
+                            inFlight.release();
+                            complete(future, ldapResult, ldapResult);
+                        }
+                    }));
+                } catch (LDAPException le) {
+                    ldapService.getMetricsRegistry().recordOperation(LDAPMetricsRegistry.ASYNC_MODIFY, le.getResultCode(), System.nanoTime() - startNanos);
+                    inFlight.releaseAfterException(le);
+                    future.completeExceptionally(le);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Checks a connection out of the pool on {@code checkOuts}, so a caller never waits for an exhausted pool, and
+     * hands it to {@code send}. A future cancelled meanwhile gets no connection.
+     */
+    private void checkOut(final LDAPConnectionPool pool, Executor checkOuts, final CompletableFuture<?> future, final Send send) {
+        checkOuts.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                InFlight inFlight;
+                try {
+                    inFlight = new InFlight(pool, pool.getConnection());
+                } catch (LDAPException le) {
+                    future.completeExceptionally(le);
+                    return;
+                }
+                send.send(inFlight);
+            }
+        });
+    }
+
+    private <T> void complete(final CompletableFuture<T> future, final LDAPResult ldapResult, final T value) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (ldapResult.getResultCode() == ResultCode.SUCCESS) {
+                    future.complete(value);
+                } else {
+                    future.completeExceptionally(new LDAPException(ldapResult));
+                }
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> run(Steps<T> steps) {
+        final Operation<T> operation = new Operation<T>();
+        steps.start(operation).whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable failure) {
+                if (failure == null) {
+                    operation.complete(result);
+                } else {
+                    operation.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+                }
+            }
+        });
+        return operation;
+    }
+
+    private static ResultCode resultCodeOf(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof LDAPException ? ((LDAPException) cause).getResultCode() : null;
+    }
+
+    /**
+     * The requests behind one public call, chained onto the {@link Operation} the caller gets.
+     */
+    private interface Steps<T> {
+        CompletableFuture<T> start(Operation<T> operation);
+    }
+
+    /**
+     * Sends one request on a connection just checked out for it.
+     */
+    private interface Send {
+        void send(InFlight inFlight);
+    }
+
+    /**
+     * The future handed to the caller for a chain of requests. Cancelling it cancels, and so abandons, whichever
+     * request of the chain is in flight.
+     */
+    private static final class Operation<T> extends CompletableFuture<T> {
+        private volatile CompletableFuture<?> current;
+
+        <R> CompletableFuture<R> track(CompletableFuture<R> step) {
+            current = step;
+            if (isCancelled()) {
+                step.cancel(false);
+            }
+            return step;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            CompletableFuture<?> step = current;
+            if (step != null) {
+                step.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * A pooled connection with one outstanding request. The connection goes back to the pool exactly once: when the
+     * response arrives, or when the caller cancels and the request is abandoned.
+     */
+    private static final class InFlight {
+        private final LDAPConnectionPool pool;
+        private final LDAPConnection connection;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final AtomicReference<AsyncRequestID> requestID = new AtomicReference<AsyncRequestID>();
+
+        private InFlight(LDAPConnectionPool pool, LDAPConnection connection) {
+            this.pool = pool;
+            this.connection = connection;
+        }
+
+        private void sent(final CompletableFuture<?> future, AsyncRequestID asyncRequestID) {
+            requestID.set(asyncRequestID);
+            future.whenComplete(new BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object result, Throwable failure) {
+                    if (future.isCancelled()) {
+                        abandon();
+                    }
+                }
+            });
+        }
+
+        private void abandon() {
+            if (released.get()) {
+                return;
+            }
+            try {
+                connection.abandon(requestID.get());
+                release();
+            } catch (LDAPException le) {
+                releaseAfterException(le);
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                if (connection.isConnected()) {
+                    pool.releaseConnection(connection);
+                } else {
+                    pool.releaseDefunctConnection(connection);
+                }
+            }
+        }
+
+        private void releaseAfterException(LDAPException le) {
+            if (released.compareAndSet(false, true)) {
+                pool.releaseConnectionAfterException(connection, le);
+            }
+        }
+    }
+}
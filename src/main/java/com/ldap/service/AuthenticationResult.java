@@ -0,0 +1,24 @@
+package com.ldap.service;
+
+/**
+ * Outcome of a credential check by {@link LDAPAuthenticator}.
+ */
+public enum AuthenticationResult {
+
+    SUCCESS,
+
+    /**
+     * Wrong password or unknown uid.
+     */
+    INVALID_CREDENTIALS,
+
+    /**
+     * The password may be right but the account cannot log in: locked out by the password policy or inactivated.
+     */
+    LOCKED,
+
+    /**
+     * The directory could not be asked, or too many binds were already in flight.
+     */
+    UNAVAILABLE
+}
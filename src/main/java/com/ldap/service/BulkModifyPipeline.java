@@ -0,0 +1,64 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncResultListener;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ModifyRequest;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sends modify requests asynchronously, spread round-robin over a fixed set of connections, with at most
+ * {@code maxInFlight} requests outstanding at once. Every outcome ends up in the {@link BulkOperationReport}.
+ */
+class BulkModifyPipeline {
+
+    private final List<LDAPConnection> connections;
+    private final int maxInFlight;
+    private final Semaphore window;
+    private final BulkOperationReport report;
+    private final LDAPMetricsRegistry metricsRegistry;
+    private int nextConnection;
+
+    BulkModifyPipeline(List<LDAPConnection> connections, int maxInFlight, BulkOperationReport report, LDAPMetricsRegistry metricsRegistry) {
+        this.connections = connections;
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        this.report = report;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * Blocks while the in-flight window is full, then sends the request without waiting for its result.
+     */
+    void submit(final String username, ModifyRequest modifyRequest) throws InterruptedException {
+        window.acquire();
+        LDAPConnection connection = connections.get(nextConnection++ % connections.size());
+        final long startNanos = System.nanoTime();
+        try {
+            connection.asyncModify(modifyRequest, new AsyncResultListener() {
+                @Override
+                public void ldapResultReceived(AsyncRequestID requestID, LDAPResult ldapResult) {
+                    metricsRegistry.recordOperation(LDAPMetricsRegistry.ASYNC_MODIFY, ldapResult.getResultCode(), System.nanoTime() - startNanos);
+                    report.record(username, ldapResult.getResultCode(), ldapResult.getDiagnosticMessage());
+                    window.release();
+                }
+            });
+        } catch (LDAPException le) {
+            metricsRegistry.recordOperation(LDAPMetricsRegistry.ASYNC_MODIFY, le.getResultCode(), System.nanoTime() - startNanos);
+            report.record(username, le.getResultCode(), le.getMessage());
+            window.release();
+        }
+    }
+
+    /**
+     * Waits until every submitted request has received a result (or timed out).
+     */
+    void awaitCompletion() throws InterruptedException {
+        window.acquire(maxInFlight);
+        window.release(maxInFlight);
+    }
+}
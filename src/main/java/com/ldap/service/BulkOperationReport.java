@@ -0,0 +1,80 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.ResultCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user outcome of a bulk account operation on {@link LDAPService}.
+ */
+public class BulkOperationReport {
+
+    private final Map<String, Result> results = new ConcurrentHashMap<String, Result>();
+
+    void record(String username, ResultCode resultCode, String diagnosticMessage) {
+        results.put(username, new Result(username, resultCode, diagnosticMessage));
+    }
+
+    public Result getResult(String username) {
+        return results.get(username);
+    }
+
+    public Map<String, Result> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    public List<Result> getFailures() {
+        List<Result> failures = new ArrayList<Result>();
+        for (Result result : results.values()) {
+            if (!result.isSuccess()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    public int getSuccessCount() {
+        return results.size() - getFailures().size();
+    }
+
+    public int getFailureCount() {
+        return getFailures().size();
+    }
+
+    public static class Result {
+        private final String username;
+        private final ResultCode resultCode;
+        private final String diagnosticMessage;
+
+        public Result(String username, ResultCode resultCode, String diagnosticMessage) {
+            this.username = username;
+            this.resultCode = resultCode;
+            this.diagnosticMessage = diagnosticMessage;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public ResultCode getResultCode() {
+            return resultCode;
+        }
+
+        public String getDiagnosticMessage() {
+            return diagnosticMessage;
+        }
+
+        public boolean isSuccess() {
+            return resultCode == ResultCode.SUCCESS;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s - %s", username, resultCode, diagnosticMessage);
+        }
+    }
+}
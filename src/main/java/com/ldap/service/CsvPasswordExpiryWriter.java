@@ -0,0 +1,49 @@
+package com.ldap.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Writes a {@link PasswordExpiryReport} as CSV with the columns {@code uid,dn,expirationDate,status}. Dates are
+ * written in UTC as {@code yyyy-MM-dd'T'HH:mm:ss'Z'}; a password that never expires has an empty date, a user without
+ * {@code pwdChangedTime} has {@value #NO_CHANGE_TIME} and a user whose policy could not be read has
+ * {@value #UNKNOWN}. The writer is not closed or flushed by this class.
+ */
+public class CsvPasswordExpiryWriter implements PasswordExpiryListener {
+
+    public static final String NO_CHANGE_TIME = "noChangeTime";
+    public static final String UNKNOWN = "unknown";
+
+    private final Writer writer;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    public CsvPasswordExpiryWriter(Writer writer) throws IOException {
+        this.writer = writer;
+        this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        writer.write("uid,dn,expirationDate,status\n");
+    }
+
+    @Override
+    public void passwordExpiry(String uid, UserAccountSnapshot snapshot, Date expirationDate) throws IOException {
+        String date;
+        if (expirationDate == null) {
+            date = snapshot.getPwdChangedTime() == null ? NO_CHANGE_TIME : UNKNOWN;
+        } else {
+            date = expirationDate.equals(LDAPService.INFINITY_TIME) ? "" : dateFormat.format(expirationDate);
+        }
+        writer.write(String.format("%s,%s,%s,%s\n", escape(uid), escape(snapshot.getDN()), date, snapshot.getStatus()));
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
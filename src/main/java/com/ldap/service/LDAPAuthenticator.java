@@ -0,0 +1,183 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10ErrorType;
+import com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10RequestControl;
+import com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10ResponseControl;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Verifies user credentials with simple binds on connections from a dedicated bind pool, so a login storm never
+ * changes the identity of connections used for admin reads and modifies. At most {@code maxConcurrentBinds} binds
+ * are in flight; callers that cannot get a permit within {@code acquireTimeoutMillis} get
+ * {@link AuthenticationResult#UNAVAILABLE} instead of queueing behind a slow directory.
+ */
+public class LDAPAuthenticator implements Closeable {
+
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 1000L;
+
+    public interface DNLookup {
+        String lookupDN(String username) throws LDAPException;
+    }
+
+    private final LDAPConnectionPool bindPool;
+    private final DNLookup dnLookup;
+    private final Semaphore permits;
+    private final long acquireTimeoutMillis;
+    private ExecutorService executor;
+    private boolean ownsExecutor;
+    private LDAPMetricsRegistry metricsRegistry = LDAPMetricsRegistry.NONE;
+
+    public LDAPAuthenticator(LDAPConnectionPool bindPool, DNLookup dnLookup, int maxConcurrentBinds, long acquireTimeoutMillis) {
+        this.bindPool = bindPool;
+        this.dnLookup = dnLookup;
+        this.permits = new Semaphore(maxConcurrentBinds, true);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * Runs {@link #authenticateAsync} on the given executor instead of the default one.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        closeExecutor();
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    public void setMetricsRegistry(LDAPMetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public LDAPConnectionPool getBindPool() {
+        return bindPool;
+    }
+
+    public AuthenticationResult authenticate(String username, String password) {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return AuthenticationResult.UNAVAILABLE;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return AuthenticationResult.UNAVAILABLE;
+        }
+
+        try {
+            String bindDN = dnLookup.lookupDN(username);
+            if (bindDN == null) {
+                return AuthenticationResult.INVALID_CREDENTIALS;
+            }
+
+            LDAPConnection connection = bindPool.getConnection();
+            long startNanos = System.nanoTime();
+            try {
+                connection.bind(new SimpleBindRequest(bindDN, password, new DraftBeheraLDAPPasswordPolicy10RequestControl()));
+                metricsRegistry.recordOperation(LDAPMetricsRegistry.BIND, ResultCode.SUCCESS, System.nanoTime() - startNanos);
+                bindPool.releaseConnection(connection);
+                return AuthenticationResult.SUCCESS;
+            } catch (LDAPException le) {
+                metricsRegistry.recordOperation(LDAPMetricsRegistry.BIND, le.getResultCode(), System.nanoTime() - startNanos);
+                bindPool.releaseConnectionAfterException(connection, le);
+                throw le;
+            }
+        } catch (LDAPException le) {
+            return classify(le);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * The SDK has no asynchronous bind, so the bind runs on the authenticator's executor; with the default executor
+     * that is a virtual thread where the JVM supports them.
+     */
+    public CompletableFuture<AuthenticationResult> authenticateAsync(final String username, final String password) {
+        return CompletableFuture.supplyAsync(new Supplier<AuthenticationResult>() {
+            @Override
+            public AuthenticationResult get() {
+                return authenticate(username, password);
+            }
+        }, executor());
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    @Override
+    public synchronized void close() {
+        closeExecutor();
+    }
+
+    /**
+     * Maps a failed bind to a result. ODSEE reports a lockout as a constraint violation and an inactivated account as
+     * unwilling to perform; servers that return the password policy response control are checked for it first, and
+     * a control that cannot be decoded is ignored. Runs on every failed bind, so it logs nothing.
+     */
+    static AuthenticationResult classify(LDAPException le) {
+        try {
+            DraftBeheraLDAPPasswordPolicy10ResponseControl policyControl = DraftBeheraLDAPPasswordPolicy10ResponseControl.get(le.toLDAPResult());
+            if (policyControl != null && policyControl.getErrorType() == DraftBeheraLDAPPasswordPolicy10ErrorType.ACCOUNT_LOCKED) {
+                return AuthenticationResult.LOCKED;
+            }
+        } catch (LDAPException decodeFailure) {
+            // A control that does not decode says nothing about the account; the result code still does.
+        }
+
+        ResultCode resultCode = le.getResultCode();
+        if (resultCode == ResultCode.INVALID_CREDENTIALS || resultCode == ResultCode.NO_SUCH_OBJECT
+                || resultCode == ResultCode.INAPPROPRIATE_AUTHENTICATION || resultCode == ResultCode.PARAM_ERROR) {
+            return AuthenticationResult.INVALID_CREDENTIALS;
+        }
+        if (resultCode == ResultCode.CONSTRAINT_VIOLATION || resultCode == ResultCode.UNWILLING_TO_PERFORM) {
+            return AuthenticationResult.LOCKED;
+        }
+        return AuthenticationResult.UNAVAILABLE;
+    }
+
+    /**
+     * Returns an executor that starts one virtual thread per task when the JVM supports them (Java 21+), and a cached
+     * pool of daemon threads otherwise.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ldap-authenticator");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = newVirtualThreadExecutor();
+            ownsExecutor = true;
+        }
+        return executor;
+    }
+
+    private void closeExecutor() {
+        if (executor != null && ownsExecutor) {
+            executor.shutdown();
+        }
+        executor = null;
+    }
+}
@@ -0,0 +1,61 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.BindRequest;
+import com.unboundid.ldap.sdk.GetEntryLDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+
+/**
+ * Builds the pools a pooled {@link LDAPService} needs: an admin pool whose connections stay bound as the directory
+ * administrator for reads and modifies, and a bind pool used only to verify end-user credentials. In a replicated
+ * deployment the admin pool reads from the replicas and a separate write pool sends modifies to the supplier.
+ */
+public final class LDAPConnectionPools {
+
+    public static final String ADMIN_DN = "cn=admin,cn=administrators,cn=dscc";
+    public static final String ADMIN_PASSWORD = "Odsee#dm1n";
+
+    private LDAPConnectionPools() {
+    }
+
+    public static LDAPConnectionPool createAdminPool(String host, int port, LDAPPoolConfig config) throws LDAPException {
+        return createAdminPool(LDAPServerSets.single(host, port, config), ADMIN_DN, ADMIN_PASSWORD, config);
+    }
+
+    public static LDAPConnectionPool createAdminPool(ServerSet serverSet, String bindDN, String password, LDAPPoolConfig config) throws LDAPException {
+        return createPool(serverSet, new SimpleBindRequest(bindDN, password), config, "ldapapp-admin");
+    }
+
+    /**
+     * Admin-bound pool for modifies, normally over {@link LDAPServerSets#failover} with the supplier first.
+     */
+    public static LDAPConnectionPool createWritePool(ServerSet serverSet, String bindDN, String password, LDAPPoolConfig config) throws LDAPException {
+        return createPool(serverSet, new SimpleBindRequest(bindDN, password), config, "ldapapp-write");
+    }
+
+    public static LDAPConnectionPool createBindPool(String host, int port, LDAPPoolConfig config) throws LDAPException {
+        return createBindPool(LDAPServerSets.single(host, port, config), config);
+    }
+
+    /**
+     * Connections in the bind pool are never re-authenticated after a user bind, so whatever identity they end up
+     * with does not matter; nothing but binds is ever sent over them.
+     */
+    public static LDAPConnectionPool createBindPool(ServerSet serverSet, LDAPPoolConfig config) throws LDAPException {
+        return createPool(serverSet, null, config, "ldapapp-bind");
+    }
+
+    private static LDAPConnectionPool createPool(ServerSet serverSet, BindRequest bindRequest, LDAPPoolConfig config, String name) throws LDAPException {
+        LDAPConnectionPool pool = new LDAPConnectionPool(serverSet, bindRequest, config.getInitialConnections(), config.getMaxConnections());
+        pool.setConnectionPoolName(name);
+        pool.setCreateIfNecessary(true);
+        pool.setMaxWaitTimeMillis(config.getMaxWaitTimeMillis());
+        pool.setMaxConnectionAgeMillis(config.getMaxConnectionAgeMillis());
+        pool.setHealthCheckIntervalMillis(config.getHealthCheckIntervalMillis());
+        pool.setHealthCheck(new GetEntryLDAPConnectionPoolHealthCheck("", config.getHealthCheckResponseTimeoutMillis(), false, false, false, true, true));
+        pool.setRetryFailedOperationsDueToInvalidConnections(true);
+        return pool;
+    }
+}
@@ -0,0 +1,128 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link LDAPMetricsRegistry}: per-operation counters, result-code breakdowns and latency histograms, plus
+ * utilization of the registered pools. {@link #registerMBean(String)} publishes it as an MXBean.
+ */
+public class LDAPMetrics implements LDAPMetricsRegistry, LDAPMetricsMXBean {
+
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+    private final ConcurrentMap<String, LDAPConnectionPool> pools = new ConcurrentHashMap<String, LDAPConnectionPool>();
+
+    @Override
+    public void recordOperation(String operation, ResultCode resultCode, long elapsedNanos) {
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            OperationMetrics created = new OperationMetrics();
+            metrics = operations.putIfAbsent(operation, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        metrics.record(resultCode, elapsedNanos);
+    }
+
+    /**
+     * Reports the pool under its name; a pool whose name is already taken by another open pool, e.g. the admin pool of
+     * a second service on the same host, is reported under the name followed by a counter. Registering the same pool
+     * again has no effect.
+     */
+    @Override
+    public synchronized void registerPool(LDAPConnectionPool pool) {
+        if (pools.containsValue(pool)) {
+            return;
+        }
+        String baseName = pool.getConnectionPoolName() != null ? pool.getConnectionPoolName() : "pool";
+        String name = baseName;
+        for (int counter = 2; pools.containsKey(name) && !pools.get(name).isClosed(); counter++) {
+            name = String.format("%s-%d", baseName, counter);
+        }
+        pools.put(name, pool);
+    }
+
+    @Override
+    public Map<String, OperationStatistics> getOperations() {
+        Map<String, OperationStatistics> statistics = new TreeMap<String, OperationStatistics>();
+        for (Map.Entry<String, OperationMetrics> operation : operations.entrySet()) {
+            statistics.put(operation.getKey(), operation.getValue().toStatistics());
+        }
+        return statistics;
+    }
+
+    public OperationStatistics getOperation(String operation) {
+        OperationMetrics metrics = operations.get(operation);
+        return metrics != null ? metrics.toStatistics() : null;
+    }
+
+    @Override
+    public Map<String, PoolStatistics> getPools() {
+        Map<String, PoolStatistics> statistics = new TreeMap<String, PoolStatistics>();
+        for (Map.Entry<String, LDAPConnectionPool> pool : pools.entrySet()) {
+            if (!pool.getValue().isClosed()) {
+                statistics.put(pool.getKey(), PoolStatistics.of(pool.getValue()));
+            }
+        }
+        return statistics;
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+    }
+
+    /**
+     * Registers this instance with the platform MBean server as {@code com.ldap:type=LDAPMetrics,name=<name>}.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(String.format("com.ldap:type=LDAPMetrics,name=%s", ObjectName.quote(name)));
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        mBeanServer.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    private static final class OperationMetrics {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong failures = new AtomicLong();
+        private final ConcurrentMap<ResultCode, AtomicLong> resultCodes = new ConcurrentHashMap<ResultCode, AtomicLong>();
+
+        private void record(ResultCode resultCode, long elapsedNanos) {
+            histogram.recordNanos(elapsedNanos);
+            if (resultCode != ResultCode.SUCCESS) {
+                failures.incrementAndGet();
+            }
+
+            AtomicLong count = resultCodes.get(resultCode);
+            if (count == null) {
+                AtomicLong created = new AtomicLong();
+                count = resultCodes.putIfAbsent(resultCode, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        private OperationStatistics toStatistics() {
+            Map<String, Long> counts = new TreeMap<String, Long>();
+            for (Map.Entry<ResultCode, AtomicLong> resultCode : resultCodes.entrySet()) {
+                counts.put(resultCode.getKey().toString(), resultCode.getValue().get());
+            }
+            return new OperationStatistics(histogram.getCount(), failures.get(), histogram.getMeanMillis(),
+                    histogram.getPercentileMillis(50.0), histogram.getPercentileMillis(99.0), histogram.getPercentileMillis(99.9),
+                    histogram.getMaxMillis(), counts);
+        }
+    }
+}
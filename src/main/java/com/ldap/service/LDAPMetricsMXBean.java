@@ -0,0 +1,15 @@
+package com.ldap.service;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link LDAPMetrics}, keyed by operation name and by pool name.
+ */
+public interface LDAPMetricsMXBean {
+
+    Map<String, OperationStatistics> getOperations();
+
+    Map<String, PoolStatistics> getPools();
+
+    void reset();
+}
@@ -0,0 +1,40 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * Receives the timing and outcome of every directory call made by {@link LDAPService} and its helpers. Implement it to
+ * feed an existing metrics system, or use {@link LDAPMetrics}, which keeps histograms in memory and can publish them
+ * over JMX.
+ */
+public interface LDAPMetricsRegistry {
+
+    String BIND = "bind";
+    String ADMIN_BIND = "adminBind";
+    String SUBTREE_SEARCH = "subtreeSearch";
+    String BASE_SEARCH = "baseSearch";
+    String MODIFY = "modify";
+    String ASYNC_MODIFY = "asyncModify";
+    /**
+     * A changelog poll, persistent search heartbeat or failed change notification of an {@link AccountStateCache}.
+     */
+    String ACCOUNT_STATE_SYNC = "accountStateSync";
+
+    LDAPMetricsRegistry NONE = new LDAPMetricsRegistry() {
+        @Override
+        public void recordOperation(String operation, ResultCode resultCode, long elapsedNanos) {
+        }
+
+        @Override
+        public void registerPool(LDAPConnectionPool pool) {
+        }
+    };
+
+    void recordOperation(String operation, ResultCode resultCode, long elapsedNanos);
+
+    /**
+     * Adds the pool to the utilization figures reported by the registry.
+     */
+    void registerPool(LDAPConnectionPool pool);
+}
@@ -0,0 +1,104 @@
+package com.ldap.service;
+
+/**
+ * Sizing, recycling and timeout settings for the connection pools used by a pooled {@link LDAPService}.
+ */
+public class LDAPPoolConfig {
+
+    private int initialConnections = 1;
+    private int maxConnections = 10;
+    private long maxConnectionAgeMillis = 30L * 60L * 1000L;
+    private long healthCheckIntervalMillis = 60L * 1000L;
+    private long healthCheckResponseTimeoutMillis = 5000L;
+    private long maxWaitTimeMillis = 5000L;
+    private int connectTimeoutMillis = 5000;
+    private long responseTimeoutMillis = 10000L;
+    private long maxFailoverConnectionAgeMillis = 5L * 60L * 1000L;
+
+    public LDAPPoolConfig() {
+    }
+
+    public LDAPPoolConfig(int initialConnections, int maxConnections) {
+        this.initialConnections = initialConnections;
+        this.maxConnections = maxConnections;
+    }
+
+    public int getInitialConnections() {
+        return initialConnections;
+    }
+
+    public void setInitialConnections(int initialConnections) {
+        this.initialConnections = initialConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public long getMaxConnectionAgeMillis() {
+        return maxConnectionAgeMillis;
+    }
+
+    public void setMaxConnectionAgeMillis(long maxConnectionAgeMillis) {
+        this.maxConnectionAgeMillis = maxConnectionAgeMillis;
+    }
+
+    public long getHealthCheckIntervalMillis() {
+        return healthCheckIntervalMillis;
+    }
+
+    public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+    }
+
+    public long getHealthCheckResponseTimeoutMillis() {
+        return healthCheckResponseTimeoutMillis;
+    }
+
+    public void setHealthCheckResponseTimeoutMillis(long healthCheckResponseTimeoutMillis) {
+        this.healthCheckResponseTimeoutMillis = healthCheckResponseTimeoutMillis;
+    }
+
+    public long getMaxWaitTimeMillis() {
+        return maxWaitTimeMillis;
+    }
+
+    public void setMaxWaitTimeMillis(long maxWaitTimeMillis) {
+        this.maxWaitTimeMillis = maxWaitTimeMillis;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * How long any single operation may wait for the server's response before failing with a timeout.
+     */
+    public long getResponseTimeoutMillis() {
+        return responseTimeoutMillis;
+    }
+
+    public void setResponseTimeoutMillis(long responseTimeoutMillis) {
+        this.responseTimeoutMillis = responseTimeoutMillis;
+    }
+
+    /**
+     * Maximum age of a connection a failover server set opened to a server other than its first choice, so pools
+     * move back to the supplier soon after it recovers.
+     */
+    public long getMaxFailoverConnectionAgeMillis() {
+        return maxFailoverConnectionAgeMillis;
+    }
+
+    public void setMaxFailoverConnectionAgeMillis(long maxFailoverConnectionAgeMillis) {
+        this.maxFailoverConnectionAgeMillis = maxFailoverConnectionAgeMillis;
+    }
+}
@@ -0,0 +1,99 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.DereferencePolicy;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+
+/**
+ * Prebuilt parts of the requests {@link LDAPService} sends on its hot paths, so no filter string is formatted per
+ * call and parsed again by the SDK. Uids go into filters through {@link Filter#createEqualityFilter}, which escapes
+ * them, so a uid such as {@code a*)(uid=b} matches only itself.
+ * <p>
+ * {@link SearchRequest} is mutable, so searches are copied from prototypes that already carry the filter or
+ * attribute list and the limits, and each caller changes only its own copy. The modifications that do not depend on
+ * the user are built once per parent DN and shared; callers must not change the returned arrays.
+ */
+public final class LDAPRequestTemplates {
+
+    /**
+     * Server-side time limit of the searches built here; the client-side response timeout still applies on top.
+     */
+    public static final int TIME_LIMIT_SECONDS = 10;
+
+    public static final String[] NO_ATTRIBUTES = {"1.1"};
+    public static final Filter ANY_OBJECT = Filter.createPresenceFilter("objectclass");
+    public static final String DISABLED_ROLE_RDN = "cn=nsManagedDisabledRole";
+    public static final String DEFAULT_PWD_MAX_AGE = "7776000";
+
+    private static final SearchRequest UID_SEARCH = new SearchRequest("", SearchScope.SUB, DereferencePolicy.NEVER, 1,
+            TIME_LIMIT_SECONDS, false, ANY_OBJECT, NO_ATTRIBUTES);
+    private static final SearchRequest USER_ENTRY_READ = new SearchRequest("", SearchScope.BASE, DereferencePolicy.NEVER, 1,
+            TIME_LIMIT_SECONDS, false, ANY_OBJECT, UserAccountSnapshot.ATTRIBUTES);
+
+    private final String disabledRoleDN;
+    private final Modification[] inactivateModifications;
+    private final Modification[] activateModifications;
+    private final Modification[] pwdMaxAgeModifications;
+
+    public LDAPRequestTemplates(String parentDN) {
+        this.disabledRoleDN = DISABLED_ROLE_RDN + ',' + parentDN;
+        this.inactivateModifications = new Modification[]{
+                new Modification(ModificationType.ADD, "nsroledn", disabledRoleDN),
+                new Modification(ModificationType.ADD, "nsaccountlock", "true")};
+        this.activateModifications = new Modification[]{
+                new Modification(ModificationType.DELETE, "nsroledn"),
+                new Modification(ModificationType.DELETE, "nsaccountlock")};
+        this.pwdMaxAgeModifications = new Modification[]{
+                new Modification(ModificationType.ADD, "pwdMaxAge", DEFAULT_PWD_MAX_AGE)};
+    }
+
+    public static Filter uidFilter(String username) {
+        return Filter.createEqualityFilter("uid", username);
+    }
+
+    /**
+     * @return a subtree search for the entry with the given uid that returns its DN only; a second match makes the
+     *         server stop with {@code sizeLimitExceeded}, and the first entry is still the answer
+     */
+    public static SearchRequest uidSearch(String baseDN, String username) {
+        SearchRequest searchRequest = UID_SEARCH.duplicate();
+        searchRequest.setBaseDN(baseDN);
+        searchRequest.setFilter(uidFilter(username));
+        return searchRequest;
+    }
+
+    /**
+     * @return a base-scope read of the user entry's {@link UserAccountSnapshot#ATTRIBUTES}
+     */
+    public static SearchRequest userEntryRead(String userDN) {
+        SearchRequest searchRequest = USER_ENTRY_READ.duplicate();
+        searchRequest.setBaseDN(userDN);
+        return searchRequest;
+    }
+
+    /**
+     * @return a base-scope read of the given attributes of any entry
+     */
+    public static SearchRequest entryRead(String entryDN, String... attributes) {
+        return new SearchRequest(entryDN, SearchScope.BASE, DereferencePolicy.NEVER, 1, TIME_LIMIT_SECONDS, false, ANY_OBJECT, attributes);
+    }
+
+    public String getDisabledRoleDN() {
+        return disabledRoleDN;
+    }
+
+    public Modification[] inactivateModifications() {
+        return inactivateModifications;
+    }
+
+    public Modification[] activateModifications() {
+        return activateModifications;
+    }
+
+    public Modification[] pwdMaxAgeModifications() {
+        return pwdMaxAgeModifications;
+    }
+}
@@ -0,0 +1,53 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.FailoverServerSet;
+import com.unboundid.ldap.sdk.FewestConnectionsServerSet;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.RoundRobinServerSet;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.ldap.sdk.SingleServerSet;
+
+/**
+ * Builds the server sets behind a replicated deployment: reads and binds spread over the read-only replicas, and
+ * modifies sent to the supplier with failover to the next server in line. Every connection gets the connect and
+ * response timeouts from the {@link LDAPPoolConfig}, so one hung replica fails its callers fast instead of stalling
+ * them; the pool health check then discards its connections and new ones go to the remaining servers.
+ */
+public final class LDAPServerSets {
+
+    public enum LoadBalancing {
+        ROUND_ROBIN,
+        FEWEST_CONNECTIONS
+    }
+
+    private LDAPServerSets() {
+    }
+
+    public static ServerSet single(String host, int port, LDAPPoolConfig config) {
+        return new SingleServerSet(host, port, connectionOptions(config));
+    }
+
+    public static ServerSet replicas(String[] hosts, int[] ports, LoadBalancing loadBalancing, LDAPPoolConfig config) {
+        if (loadBalancing == LoadBalancing.FEWEST_CONNECTIONS) {
+            return new FewestConnectionsServerSet(hosts, ports, connectionOptions(config));
+        }
+        return new RoundRobinServerSet(hosts, ports, connectionOptions(config));
+    }
+
+    /**
+     * Connects to the first server that is up, in the given order: the supplier first, then any fallbacks.
+     */
+    public static ServerSet failover(String[] hosts, int[] ports, LDAPPoolConfig config) {
+        FailoverServerSet serverSet = new FailoverServerSet(hosts, ports, connectionOptions(config));
+        serverSet.setMaxFailoverConnectionAgeMillis(config.getMaxFailoverConnectionAgeMillis());
+        return serverSet;
+    }
+
+    public static LDAPConnectionOptions connectionOptions(LDAPPoolConfig config) {
+        LDAPConnectionOptions options = new LDAPConnectionOptions();
+        options.setConnectTimeoutMillis(config.getConnectTimeoutMillis());
+        options.setResponseTimeoutMillis(config.getResponseTimeoutMillis());
+        options.setAbandonOnTimeout(true);
+        return options;
+    }
+}
@@ -1,101 +1,347 @@
 package com.ldap.service;
 
-import com.unboundid.ldap.sdk.BindResult;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPInterface;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.Modification;
 import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.ldif.LDIFException;
-import org.joda.time.DateTime;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class LDAPService {
 
     public static final Date INFINITY_TIME = new Date(Long.MAX_VALUE);
+    private static final int BULK_RESOLVE_CHUNK_SIZE = 100;
     private LDAPConnection ldapConnection;
+    private LDAPConnectionPool adminPool;
+    private LDAPConnectionPool writePool;
     private String parentDN;
+    private LDAPRequestTemplates requestTemplates;
+    private PasswordPolicyCache passwordPolicyCache = new PasswordPolicyCache();
+    private UidDnResolver uidDnResolver = new UidDnResolver();
+    private AccountStateCache accountStateCache;
+    private LDAPAuthenticator authenticator;
+    private LDAPMetricsRegistry metricsRegistry = LDAPMetricsRegistry.NONE;
+    private final LDAPAuthenticator.DNLookup dnLookup = new LDAPAuthenticator.DNLookup() {
+        @Override
+        public String lookupDN(String username) throws LDAPException {
+            return uidDnResolver.resolve(reader(), parentDN, username);
+        }
+    };
+    private int bulkConnections = 4;
+    private int bulkMaxInFlight = 256;
+    private final PasswordPolicyCache.PolicyLoader passwordPolicyLoader = new PasswordPolicyCache.PolicyLoader() {
+        @Override
+        public Integer loadPwdMaxAge(String policyDN) throws LDAPException {
+            return ldapSearchInteger(adminReader(), LDAPRequestTemplates.entryRead(policyDN, "pwdMaxAge"), "pwdMaxAge");
+        }
+    };
 
     public LDAPService() {
+        this.requestTemplates = new LDAPRequestTemplates(null);
     }
 
     public LDAPService(String parentDN) {
         this.parentDN = parentDN;
+        this.requestTemplates = new LDAPRequestTemplates(parentDN);
     }
 
     public LDAPService(LDAPConnection ldapConnection, String parentDN) {
         this.ldapConnection = ldapConnection;
         this.parentDN = parentDN;
+        this.requestTemplates = new LDAPRequestTemplates(parentDN);
+    }
+
+    /**
+     * Pooled mode: reads and modifies go through {@code adminPool}, which stays bound as the administrator, and user
+     * credential checks go through {@code bindPool}, so one instance can be shared by any number of threads.
+     */
+    public LDAPService(LDAPConnectionPool adminPool, LDAPConnectionPool bindPool, String parentDN) {
+        this(adminPool, adminPool, bindPool, parentDN);
+    }
+
+    /**
+     * Replicated mode: reads go through {@code readPool}, usually spread over the replicas, and modifies through
+     * {@code writePool}, usually pointed at the supplier. Both must be bound as the administrator. A read made right
+     * after a modify may not see it until the change has replicated.
+     */
+    public LDAPService(LDAPConnectionPool readPool, LDAPConnectionPool writePool, LDAPConnectionPool bindPool, String parentDN) {
+        this.adminPool = readPool;
+        this.writePool = writePool;
+        this.parentDN = parentDN;
+        this.requestTemplates = new LDAPRequestTemplates(parentDN);
+        this.authenticator = new LDAPAuthenticator(bindPool, dnLookup, bindPool.getMaximumAvailableConnections(), LDAPAuthenticator.DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
     }
 
     public void setLdapConnection(LDAPConnection ldapConnection) {
         this.ldapConnection = ldapConnection;
     }
 
+    public void setPasswordPolicyCache(PasswordPolicyCache passwordPolicyCache) {
+        this.passwordPolicyCache = passwordPolicyCache;
+    }
+
+    public PasswordPolicyCache getPasswordPolicyCache() {
+        return passwordPolicyCache;
+    }
+
+    public void setUidDnResolver(UidDnResolver uidDnResolver) {
+        uidDnResolver.setMetricsRegistry(metricsRegistry);
+        this.uidDnResolver = uidDnResolver;
+    }
+
+    public UidDnResolver getUidDnResolver() {
+        return uidDnResolver;
+    }
+
+    /**
+     * Re-reads cached password policies every {@code intervalMillis} so a {@code pwdMaxAge} change is seen before the
+     * cache TTL runs out. Intended for pooled mode; the caller closes the returned refresher.
+     */
+    public PasswordPolicyCacheRefresher refreshPasswordPolicies(long intervalMillis) {
+        PasswordPolicyCacheRefresher refresher = new PasswordPolicyCacheRefresher(passwordPolicyCache, passwordPolicyLoader);
+        refresher.startPolling(intervalMillis);
+        return refresher;
+    }
+
+    /**
+     * Answers status, lock and expiry checks from the given cache while its data is fresh enough; {@code null} turns
+     * the cache off. Modifies made through this service, or an {@link AsyncLDAPService} wrapping it, drop the user
+     * from the cache, and the cache reports its feed to this service's metrics registry.
+     */
+    public void setAccountStateCache(AccountStateCache accountStateCache) {
+        if (accountStateCache != null) {
+            accountStateCache.setMetricsRegistry(metricsRegistry);
+        }
+        this.accountStateCache = accountStateCache;
+    }
+
+    public AccountStateCache getAccountStateCache() {
+        return accountStateCache;
+    }
+
+    /**
+     * Loads every user's account state from the admin pool and keeps it current by polling {@code cn=changelog}
+     * every {@code pollIntervalMillis}. Intended for pooled mode; the caller closes the returned cache.
+     *
+     * @throws LDAPException with {@link ResultCode#UNWILLING_TO_PERFORM} when the server does not publish a change
+     *                       log, since every poll would fail and every read would miss
+     */
+    public AccountStateCache enableAccountStateCache(long maxStalenessMillis, long pollIntervalMillis) throws LDAPException {
+        if (adminPool == null) {
+            throw new LDAPException(ResultCode.NOT_SUPPORTED, "The account state cache needs an admin connection pool");
+        }
+        AccountStateCache cache = new AccountStateCache(parentDN, maxStalenessMillis);
+        cache.setMetricsRegistry(metricsRegistry);
+        LDAPConnection connection = adminPool.getConnection();
+        try {
+            cache.load(connection);
+            cache.pollChangelog(connection);
+        } catch (LDAPException le) {
+            adminPool.releaseConnectionAfterException(connection, le);
+            connection = null;
+            throw le;
+        } finally {
+            if (connection != null) {
+                adminPool.releaseConnection(connection);
+            }
+        }
+        cache.startChangelogPolling(adminPool, pollIntervalMillis);
+        setAccountStateCache(cache);
+        return cache;
+    }
+
+    /**
+     * Replaces the authenticator a pooled service builds from its bind pool, e.g. to change the bind concurrency
+     * limit; {@link #dnLookup()} resolves uids the same way the service does.
+     */
+    public void setAuthenticator(LDAPAuthenticator authenticator) {
+        authenticator.setMetricsRegistry(metricsRegistry);
+        this.authenticator = authenticator;
+    }
+
+    /**
+     * Reports every directory call made by this service, its uid resolver and authenticator to the registry, and
+     * registers the service's pools for utilization reporting.
+     */
+    public void setMetricsRegistry(LDAPMetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        uidDnResolver.setMetricsRegistry(metricsRegistry);
+        if (accountStateCache != null) {
+            accountStateCache.setMetricsRegistry(metricsRegistry);
+        }
+        if (authenticator != null) {
+            authenticator.setMetricsRegistry(metricsRegistry);
+            metricsRegistry.registerPool(authenticator.getBindPool());
+        }
+        if (adminPool != null) {
+            metricsRegistry.registerPool(adminPool);
+        }
+        if (writePool != null && writePool != adminPool) {
+            metricsRegistry.registerPool(writePool);
+        }
+    }
+
+    public LDAPMetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    public LDAPAuthenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    public LDAPAuthenticator.DNLookup dnLookup() {
+        return dnLookup;
+    }
+
+    LDAPConnectionPool getReadPool() {
+        return adminPool;
+    }
+
+    LDAPConnectionPool getWritePool() {
+        return writePool;
+    }
+
+    String getParentDN() {
+        return parentDN;
+    }
+
+    /**
+     * @param bulkConnections admin connections a bulk operation spreads its modifies over
+     * @param bulkMaxInFlight modifies a bulk operation may have outstanding at once
+     */
+    public void setBulkConcurrency(int bulkConnections, int bulkMaxInFlight) {
+        if (bulkConnections <= 0 || bulkMaxInFlight <= 0) {
+            throw new IllegalArgumentException(String.format("Bulk concurrency must be positive, got %d connections and %d in flight", bulkConnections, bulkMaxInFlight));
+        }
+        this.bulkConnections = bulkConnections;
+        this.bulkMaxInFlight = bulkMaxInFlight;
+    }
+
     public void setPwdMaxAge(String username) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.ADD, "pwdMaxAge", "7776000");
-        ldapModify(username, modification);
+        ldapModify(username, requestTemplates.pwdMaxAgeModifications());
     }
 
     public void inactivateAccount(String username) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.ADD, "nsroledn", String.format("cn=nsManagedDisabledRole,%s", parentDN));
-        ldapModify(username, modification);
-
-        modification = new Modification(ModificationType.ADD, "nsaccountlock", "true");
-        ldapModify(username, modification);
+        ldapModify(username, inactivateModifications());
     }
 
     public void activateAccount(String username) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.DELETE, "nsroledn");
-        ldapModify(username, modification);
-
-        modification = new Modification(ModificationType.DELETE, "nsaccountlock");
-        ldapModify(username, modification);
+        ldapModify(username, activateModifications());
     }
 
     public void updateUserPassword(String username, String password) throws LDIFException, LDAPException {
-        Modification modification = new Modification(ModificationType.REPLACE, "userpassword", password);
-        ldapModify(username, modification);
+        ldapModify(username, passwordModifications(password));
     }
 
-    public String currentUserStatus(String username) throws LDAPException {
-        if (isAccountLocked(username)) {
-            return "Locked";
-        } else {
-            return ldapSearch(SearchScope.SUB, String.format("(uid=%s)", username), "nsaccountlock") != null ? "Inactive" : "Active";
+    public BulkOperationReport inactivateAccounts(Collection<String> usernames) throws LDAPException {
+        Map<String, Modification[]> modifications = new LinkedHashMap<String, Modification[]>();
+        for (String username : usernames) {
+            modifications.put(username, inactivateModifications());
         }
+        return bulkModify(modifications);
+    }
+
+    public BulkOperationReport activateAccounts(Collection<String> usernames) throws LDAPException {
+        Map<String, Modification[]> modifications = new LinkedHashMap<String, Modification[]>();
+        for (String username : usernames) {
+            modifications.put(username, activateModifications());
+        }
+        return bulkModify(modifications);
+    }
+
+    /**
+     * @param passwords new password keyed by uid
+     */
+    public BulkOperationReport updateUserPasswords(Map<String, String> passwords) throws LDAPException {
+        Map<String, Modification[]> modifications = new LinkedHashMap<String, Modification[]>();
+        for (Map.Entry<String, String> password : passwords.entrySet()) {
+            modifications.put(password.getKey(), passwordModifications(password.getValue()));
+        }
+        return bulkModify(modifications);
+    }
+
+    public String currentUserStatus(String username) throws LDAPException {
+        return userAccountSnapshot(username).getStatus();
     }
 
     public boolean isAccountLocked(String username) throws LDAPException {
-        return ldapSearchBoolean(SearchScope.SUB, String.format("(uid=%s)", username), "accountunlocktime");
+        return userAccountSnapshot(username).isLocked();
     }
 
     public boolean isAccountActivate(String username) throws LDAPException {
-        return !ldapSearchBoolean(SearchScope.SUB, String.format("(uid=%s)", username), "nsaccountlock");
+        return userAccountSnapshot(username).isActivate();
     }
 
-    public Date getUserAccountExpirationDate(String username) {
-        try {
-            int dayInSeconds = 86400;
-            Date userCreateDate = ldapSearchDate(SearchScope.SUB, String.format("(uid=%s)", username), "pwdchangedtime");
-            String userPasswordPolicy = ldapSearchString(SearchScope.SUB, String.format("(uid=%s)", username), "passwordpolicysubentry");
-            userPasswordPolicy = userPasswordPolicy != null ? userPasswordPolicy : "cn=Password Policy,cn=config";
-            this.parentDN = userPasswordPolicy;
+    /**
+     * Reads every account-state attribute of the user in one search.
+     *
+     * @return the snapshot, or {@code null} when no entry has the given uid
+     */
+    public UserAccountSnapshot getUserAccountSnapshot(String username) throws LDAPException {
+        AccountStateCache cache = accountStateCache;
+        long invalidationStamp = 0L;
+        if (cache != null) {
+            UserAccountSnapshot cached = cache.get(username);
+            if (cached != null) {
+                return cached;
+            }
+            invalidationStamp = cache.invalidationStamp(username);
+        }
 
-            ldapConnection.bind("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
-            Integer pwdMaxAge = ldapSearchInteger(SearchScope.BASE, "(objectclass=*)", "pwdMaxAge");
+        LDAPInterface ldapInterface = reader();
+        String userDN = uidDnResolver.resolve(ldapInterface, parentDN, username);
+        if (userDN == null) {
+            return null;
+        }
 
-            if (pwdMaxAge == 0) {
-                return INFINITY_TIME;
-            }
+        SearchResultEntry entry = ldapGetEntry(ldapInterface, LDAPRequestTemplates.userEntryRead(userDN));
+        if (entry == null) {
+            uidDnResolver.invalidate(username);
+            userDN = uidDnResolver.resolve(ldapInterface, parentDN, username);
+            entry = userDN != null ? ldapGetEntry(ldapInterface, LDAPRequestTemplates.userEntryRead(userDN)) : null;
+        }
+        if (entry == null) {
+            return null;
+        }
 
-            DateTime dateTime = new DateTime(userCreateDate);
-            return dateTime.plusDays(Integer.valueOf(pwdMaxAge) / dayInSeconds).toDate();
+        UserAccountSnapshot snapshot = UserAccountSnapshot.fromEntry(entry);
+        if (cache != null) {
+            cache.put(username, snapshot, invalidationStamp);
+        }
+        return snapshot;
+    }
+
+    public Date getUserAccountExpirationDate(String username) {
+        try {
+            return getUserAccountExpirationDate(userAccountSnapshot(username));
+        } catch (LDAPException le) {
+            System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+        }
+        return null;
+    }
+
+    public Date getUserAccountExpirationDate(UserAccountSnapshot snapshot) {
+        try {
+            Integer pwdMaxAge = passwordPolicyCache.getPwdMaxAge(snapshot.getEffectivePasswordPolicy(), passwordPolicyLoader);
+            return snapshot.getExpirationDate(pwdMaxAge);
         } catch (LDAPException le) {
             System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
         } catch (Exception e) {
@@ -104,48 +350,272 @@ public class LDAPService {
         return null;
     }
 
+    /**
+     * Streams every user under the parent DN whose password expires within the given number of days (all users when
+     * negative) to the listener, sharing this service's password policy cache.
+     *
+     * @return the number of users reported
+     */
+    public long reportPasswordExpiry(int expiringWithinDays, PasswordExpiryListener listener) throws LDAPException, IOException {
+        LDAPConnection pooled = adminPool != null ? adminPool.getConnection() : null;
+        try {
+            PasswordExpiryReport report = new PasswordExpiryReport(pooled != null ? pooled : (LDAPConnection) adminReader(), parentDN, passwordPolicyCache);
+            report.setExpiringWithinDays(expiringWithinDays);
+            return report.run(listener);
+        } catch (LDAPException le) {
+            if (pooled != null) {
+                adminPool.releaseConnectionAfterException(pooled, le);
+                pooled = null;
+            }
+            throw le;
+        } finally {
+            if (pooled != null) {
+                adminPool.releaseConnection(pooled);
+            }
+        }
+    }
+
     public boolean haveLDAPAuthentication(String username, String password){
-        return ldapBind(username, password) != null ? true : false;
+        return authenticate(username, password) == AuthenticationResult.SUCCESS;
     }
 
-    private BindResult ldapBind(String username, String password) {
+    public AuthenticationResult authenticate(String username, String password) {
+        if (authenticator != null) {
+            return authenticator.authenticate(username, password);
+        }
+
         try {
-            return ldapConnection.bind(String.format("uid=%s,ou=people,dc=fico,dc=com", username), password);
+            String bindDN = dnLookup.lookupDN(username);
+            if (bindDN == null) {
+                return AuthenticationResult.INVALID_CREDENTIALS;
+            }
+            long startNanos = System.nanoTime();
+            try {
+                ldapConnection.bind(bindDN, password);
+                record(LDAPMetricsRegistry.BIND, startNanos, ResultCode.SUCCESS);
+            } catch (LDAPException le) {
+                record(LDAPMetricsRegistry.BIND, startNanos, le.getResultCode());
+                throw le;
+            }
+            return AuthenticationResult.SUCCESS;
         } catch (LDAPException le) {
-            System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
-            return null;
+            return LDAPAuthenticator.classify(le);
+        }
+    }
+
+    /**
+     * The returned array is shared by every call and must not be changed.
+     */
+    Modification[] inactivateModifications() {
+        return requestTemplates.inactivateModifications();
+    }
+
+    /**
+     * The returned array is shared by every call and must not be changed.
+     */
+    Modification[] activateModifications() {
+        return requestTemplates.activateModifications();
+    }
+
+    Modification[] passwordModifications(String password) {
+        return new Modification[]{new Modification(ModificationType.REPLACE, "userpassword", password)};
+    }
+
+    /**
+     * Sends one modify per user, pipelined over {@code bulkConnections} admin connections with at most
+     * {@code bulkMaxInFlight} requests outstanding. Uids are resolved {@value #BULK_RESOLVE_CHUNK_SIZE} at a time
+     * with one search each, while the modifies of the previous chunk are in flight.
+     */
+    private BulkOperationReport bulkModify(Map<String, Modification[]> modifications) throws LDAPException {
+        BulkOperationReport report = new BulkOperationReport();
+        LDAPInterface ldapInterface = adminReader();
+        List<LDAPConnection> connections = checkoutBulkConnections();
+        try {
+            BulkModifyPipeline pipeline = new BulkModifyPipeline(connections, bulkMaxInFlight, report, metricsRegistry);
+            List<String> usernames = new ArrayList<String>(modifications.keySet());
+            for (int from = 0; from < usernames.size(); from += BULK_RESOLVE_CHUNK_SIZE) {
+                List<String> chunk = usernames.subList(from, Math.min(from + BULK_RESOLVE_CHUNK_SIZE, usernames.size()));
+                Map<String, String> userDNs;
+                try {
+                    userDNs = uidDnResolver.resolveAll(ldapInterface, parentDN, chunk);
+                } catch (LDAPException le) {
+                    for (String username : chunk) {
+                        report.record(username, le.getResultCode(), le.getMessage());
+                    }
+                    continue;
+                }
+                for (String username : chunk) {
+                    String userDN = userDNs.get(username);
+                    if (userDN == null) {
+                        report.record(username, ResultCode.NO_SUCH_OBJECT, String.format("No entry with uid %s under %s", username, parentDN));
+                    } else {
+                        pipeline.submit(username, new ModifyRequest(userDN, modifications.get(username)));
+                    }
+                }
+            }
+            pipeline.awaitCompletion();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted while waiting for bulk modify results", ie);
+        } finally {
+            releaseBulkConnections(connections);
+            invalidateAccountState(modifications.keySet());
+        }
+
+        for (BulkOperationReport.Result failure : report.getFailures()) {
+            if (failure.getResultCode() == ResultCode.NO_SUCH_OBJECT) {
+                uidDnResolver.invalidate(failure.getUsername());
+            }
         }
+        return report;
     }
 
-    private String ldapSearchString(SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(searchScope, searchFilter, searchAttribute);
-        return (entry != null) ? entry.getAttributeValue(searchAttribute) : null;
+    private List<LDAPConnection> checkoutBulkConnections() throws LDAPException {
+        if (writePool == null) {
+            return Collections.singletonList(ldapConnection);
+        }
+
+        List<LDAPConnection> connections = new ArrayList<LDAPConnection>(bulkConnections);
+        try {
+            for (int i = 0; i < bulkConnections; i++) {
+                connections.add(writePool.getConnection());
+            }
+        } catch (LDAPException le) {
+            if (connections.isEmpty()) {
+                throw le;
+            }
+        }
+        return connections;
     }
 
-    private Integer ldapSearchInteger(SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(searchScope, searchFilter, searchAttribute);
+    private void releaseBulkConnections(List<LDAPConnection> connections) {
+        if (writePool == null) {
+            return;
+        }
+
+        for (LDAPConnection connection : connections) {
+            if (connection.isConnected()) {
+                writePool.releaseConnection(connection);
+            } else {
+                writePool.releaseDefunctConnection(connection);
+            }
+        }
+    }
+
+    private UserAccountSnapshot userAccountSnapshot(String username) throws LDAPException {
+        UserAccountSnapshot snapshot = getUserAccountSnapshot(username);
+        return snapshot != null ? snapshot : new UserAccountSnapshot(null, null, null, null, null, null);
+    }
+
+    private Integer ldapSearchInteger(LDAPInterface ldapInterface, SearchRequest searchRequest, String searchAttribute) throws LDAPException {
+        SearchResultEntry entry = ldapSearch(ldapInterface, searchRequest, searchAttribute);
         return (entry != null) ? entry.getAttributeValueAsInteger(searchAttribute) : null;
     }
 
-    private Date ldapSearchDate(SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(searchScope, searchFilter, searchAttribute);
-        return (entry != null) ? entry.getAttributeValueAsDate(searchAttribute) : null;
+    private SearchResultEntry ldapSearch(final LDAPInterface ldapInterface, final SearchRequest searchRequest, final String searchAttribute) throws LDAPException {
+        return uidDnResolver.getSearchCoalescer().coalesce(ldapInterface, searchRequest, new SearchCoalescer.Search<SearchResultEntry>() {
+            @Override
+            public SearchResultEntry execute() throws LDAPException {
+                String operation = searchRequest.getScope() == SearchScope.BASE ? LDAPMetricsRegistry.BASE_SEARCH : LDAPMetricsRegistry.SUBTREE_SEARCH;
+                SearchResult searchResults;
+                long startNanos = System.nanoTime();
+                try {
+                    searchResults = ldapInterface.search(searchRequest);
+                    record(operation, startNanos, searchResults.getResultCode());
+                } catch (LDAPSearchException lse) {
+                    record(operation, startNanos, lse.getResultCode());
+                    throw lse;
+                }
+                return (searchResults != null && searchResults.getEntryCount() > 0 && searchResults.getSearchEntries().get(0).hasAttribute(searchAttribute)) ? searchResults.getSearchEntries().get(0) : null;
+            }
+        });
     }
 
-    private Boolean ldapSearchBoolean(SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResultEntry entry = ldapSearch(searchScope, searchFilter, searchAttribute);
-        return (entry != null) ? entry.getAttributeValueAsBoolean(searchAttribute) : false;
+    private LDAPResult ldapModify(String username, Modification... modifications) throws LDAPException {
+        LDAPInterface ldapInterface = adminReader();
+        String userDN = uidDnResolver.resolve(ldapInterface, parentDN, username);
+        if (userDN == null) {
+            throw new LDAPException(ResultCode.NO_SUCH_OBJECT, String.format("No entry with uid %s under %s", username, parentDN));
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            LDAPResult ldapResult = writer(ldapInterface).modify(userDN, modifications);
+            record(LDAPMetricsRegistry.MODIFY, startNanos, ldapResult.getResultCode());
+            return ldapResult;
+        } catch (LDAPException le) {
+            record(LDAPMetricsRegistry.MODIFY, startNanos, le.getResultCode());
+            if (le.getResultCode() == ResultCode.NO_SUCH_OBJECT) {
+                uidDnResolver.invalidate(username);
+            }
+            throw le;
+        } finally {
+            invalidateAccountState(Collections.singleton(username));
+        }
+    }
+
+    /**
+     * Drops the users from the account state cache after a modify, so the next read goes to the directory.
+     */
+    void invalidateAccountState(Collection<String> usernames) {
+        AccountStateCache cache = accountStateCache;
+        if (cache != null) {
+            for (String username : usernames) {
+                cache.invalidate(username);
+            }
+        }
+    }
+
+    private LDAPInterface writer(LDAPInterface adminReader) {
+        return writePool != null ? writePool : adminReader;
     }
 
-    private SearchResultEntry ldapSearch(SearchScope searchScope, String searchFilter, String searchAttribute) throws LDAPSearchException {
-        SearchResult searchResults = ldapConnection.search(parentDN, searchScope, searchFilter, searchAttribute);
-        return (searchResults != null && searchResults.getEntryCount() > 0 && searchResults.getSearchEntries().get(0).hasAttribute(searchAttribute)) ? searchResults.getSearchEntries().get(0) : null;
+    private LDAPInterface reader() {
+        return adminPool != null ? adminPool : ldapConnection;
     }
 
-    private LDAPResult ldapModify(String username, Modification modification) throws LDAPException {
-        ldapConnection.bind("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
-        LDAPResult ldapResult = ldapConnection.modify(String.format("uid=%s,%s", username, parentDN), modification);
+    /**
+     * The admin pool is already bound as the administrator; a single shared connection has to be re-bound first.
+     */
+    private LDAPInterface adminReader() throws LDAPException {
+        if (adminPool != null) {
+            return adminPool;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            ldapConnection.bind(LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD);
+            record(LDAPMetricsRegistry.ADMIN_BIND, startNanos, ResultCode.SUCCESS);
+        } catch (LDAPException le) {
+            record(LDAPMetricsRegistry.ADMIN_BIND, startNanos, le.getResultCode());
+            throw le;
+        }
+        return ldapConnection;
+    }
+
+    /**
+     * @return the entry read by the base-scope request, or {@code null} when it does not exist
+     */
+    private SearchResultEntry ldapGetEntry(final LDAPInterface ldapInterface, final SearchRequest searchRequest) throws LDAPException {
+        return uidDnResolver.getSearchCoalescer().coalesce(ldapInterface, searchRequest, new SearchCoalescer.Search<SearchResultEntry>() {
+            @Override
+            public SearchResultEntry execute() throws LDAPException {
+                long startNanos = System.nanoTime();
+                try {
+                    SearchResult searchResults = ldapInterface.search(searchRequest);
+                    record(LDAPMetricsRegistry.BASE_SEARCH, startNanos, searchResults.getResultCode());
+                    return searchResults.getEntryCount() > 0 ? searchResults.getSearchEntries().get(0) : null;
+                } catch (LDAPSearchException lse) {
+                    record(LDAPMetricsRegistry.BASE_SEARCH, startNanos, lse.getResultCode());
+                    if (lse.getResultCode() == ResultCode.NO_SUCH_OBJECT) {
+                        return null;
+                    }
+                    throw lse;
+                }
+            }
+        });
+    }
 
-        return ldapResult;
+    private void record(String operation, long startNanos, ResultCode resultCode) {
+        metricsRegistry.recordOperation(operation, resultCode, System.nanoTime() - startNanos);
     }
 }
\ No newline at end of file
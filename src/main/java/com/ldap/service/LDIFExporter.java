@@ -0,0 +1,115 @@
+package com.ldap.service;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.ldif.LDIFWriter;
+
+import java.io.IOException;
+
+/**
+ * Dumps a subtree to LDIF. Entries are written from a {@link SearchResultListener} as they arrive, page by page, so
+ * nothing but the entry being written is held in memory.
+ */
+public class LDIFExporter {
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final LDAPConnectionPool pool;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * @param pool connections bound as the administrator
+     */
+    public LDIFExporter(LDAPConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Writes every entry under {@code baseDN}, the base entry included, that matches the filter. The writer is
+     * flushed but left open.
+     *
+     * @param attributes the attributes to export; none means all user attributes
+     * @return the number of entries written
+     */
+    public long export(String baseDN, String filter, LDIFWriter writer, String... attributes) throws LDAPException, IOException {
+        EntryWriter entryWriter = new EntryWriter(writer);
+        SearchRequest searchRequest = new SearchRequest(entryWriter, baseDN, SearchScope.SUB, filter, attributes);
+
+        // Paged search state is tied to the connection, so every page is read over the same one.
+        LDAPConnection connection = pool.getConnection();
+        try {
+            ASN1OctetString cookie = null;
+            do {
+                searchRequest.setControls(new SimplePagedResultsControl(pageSize, cookie, true));
+                SearchResult searchResult = connection.search(searchRequest);
+                if (entryWriter.failure != null) {
+                    throw entryWriter.failure;
+                }
+
+                SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+                if (responseControl == null) {
+                    throw new LDAPException(ResultCode.CONTROL_NOT_FOUND, "The server did not return a paged results response control");
+                }
+                cookie = responseControl.moreResultsToReturn() ? responseControl.getCookie() : null;
+            } while (cookie != null);
+        } catch (LDAPException le) {
+            if (!le.getResultCode().isConnectionUsable()) {
+                pool.releaseDefunctConnection(connection);
+                connection = null;
+            }
+            throw le;
+        } finally {
+            if (connection != null) {
+                pool.releaseConnection(connection);
+            }
+        }
+
+        writer.flush();
+        return entryWriter.written;
+    }
+
+    /**
+     * The listener cannot throw, so the first write failure is kept, later entries are dropped and the export fails
+     * once the current page has been received.
+     */
+    private static final class EntryWriter implements SearchResultListener {
+        private final LDIFWriter writer;
+        private long written;
+        private IOException failure;
+
+        private EntryWriter(LDIFWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            if (failure != null) {
+                return;
+            }
+            try {
+                writer.writeEntry(searchEntry);
+                written++;
+            } catch (IOException ioe) {
+                failure = ioe;
+            }
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.ResultCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcome of an {@link LDIFImporter} run. Only counters are kept for successful records, and at most
+ * {@link #MAX_RECORDED_FAILURES} failures are kept in detail, so the report stays small however large the file is.
+ */
+public class LDIFImportReport {
+
+    public static final int MAX_RECORDED_FAILURES = 1000;
+
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong alreadyPresent = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final List<Failure> failures = new ArrayList<Failure>();
+    private volatile long checkpoint;
+
+    void recordRead() {
+        read.incrementAndGet();
+    }
+
+    void recordSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    void recordApplied() {
+        applied.incrementAndGet();
+    }
+
+    void recordAlreadyPresent() {
+        alreadyPresent.incrementAndGet();
+    }
+
+    void recordFailure(long recordNumber, String dn, ResultCode resultCode, String diagnosticMessage) {
+        failureCount.incrementAndGet();
+        synchronized (failures) {
+            if (failures.size() < MAX_RECORDED_FAILURES) {
+                failures.add(new Failure(recordNumber, dn, resultCode, diagnosticMessage));
+            }
+        }
+    }
+
+    void setCheckpoint(long checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return the number of records read from the LDIF source, including skipped ones
+     */
+    public long getReadCount() {
+        return read.get();
+    }
+
+    /**
+     * @return the number of records skipped because an earlier run had already completed them
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getAppliedCount() {
+        return applied.get();
+    }
+
+    /**
+     * @return the number of records replayed after an interrupted earlier run whose change was already in the
+     *         directory, such as adds of existing entries or deletes of missing ones
+     */
+    public long getAlreadyPresentCount() {
+        return alreadyPresent.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return the first {@link #MAX_RECORDED_FAILURES} failures, in no particular order
+     */
+    public List<Failure> getFailures() {
+        synchronized (failures) {
+            return Collections.unmodifiableList(new ArrayList<Failure>(failures));
+        }
+    }
+
+    /**
+     * @return the number of leading records of the source that are known to be complete
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public static class Failure {
+        private final long recordNumber;
+        private final String dn;
+        private final ResultCode resultCode;
+        private final String diagnosticMessage;
+
+        public Failure(long recordNumber, String dn, ResultCode resultCode, String diagnosticMessage) {
+            this.recordNumber = recordNumber;
+            this.dn = dn;
+            this.resultCode = resultCode;
+            this.diagnosticMessage = diagnosticMessage;
+        }
+
+        /**
+         * @return the 1-based position of the record in the LDIF source
+         */
+        public long getRecordNumber() {
+            return recordNumber;
+        }
+
+        public String getDN() {
+            return dn;
+        }
+
+        public ResultCode getResultCode() {
+            return resultCode;
+        }
+
+        public String getDiagnosticMessage() {
+            return diagnosticMessage;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s: %s - %s", recordNumber, dn, resultCode, diagnosticMessage);
+        }
+    }
+}
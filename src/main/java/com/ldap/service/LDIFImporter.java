@@ -0,0 +1,526 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFAddChangeRecord;
+import com.unboundid.ldif.LDIFChangeRecord;
+import com.unboundid.ldif.LDIFDeleteChangeRecord;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFModifyChangeRecord;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams an LDIF source into the directory. The calling thread reads records and hands them to a fixed set of
+ * workers through bounded queues, so reading blocks whenever the workers fall behind and memory use does not grow with
+ * the size of the file. Each worker checks one pooled connection out per batch of records and applies them in order:
+ * plain entries are added, change records are processed as written.
+ * <p>
+ * Records are routed to workers by DN, so changes to the same entry are applied in file order. An add whose parent does
+ * not exist yet, or a delete whose entry still has children, is retried after the main pass once the rest of the file
+ * has been applied, and every later record for the same entry waits with it.
+ * <p>
+ * With a checkpoint file, the number of leading records known to be complete is written to it as the import
+ * progresses, and a later run over the same source skips that many records. The file also holds the highest record
+ * number that may have been sent, written before any record past it is, so the next run knows which records it
+ * replays. Only within that window are records whose change is already in the directory counted rather than failed:
+ * adds of existing entries, deletes of missing ones, and modifies that add a value already present or remove one
+ * already gone. Elsewhere these are conflicts and reported as failures. Modify DN records fail even when replayed.
+ * Deferred records only complete once the main pass is over, so the checkpoint does not move past the first of them
+ * until they have been retried, and a run interrupted before that resumes from there.
+ */
+public class LDIFImporter {
+
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 1000L;
+
+    private static final Numbered END = new Numbered(0L, null, null);
+
+    private final LDAPConnectionPool pool;
+    private int workers = DEFAULT_WORKERS;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private File checkpointFile;
+    private long checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL_MILLIS;
+
+    /**
+     * @param pool connections bound as the administrator; it should hold at least {@code workers} connections
+     */
+    public LDIFImporter(LDAPConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Sets how many records may wait for each worker before reading blocks.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets how many queued records a worker applies per connection checkout.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Enables resuming: progress is written to the file at most once per {@code intervalMillis} and when the run ends.
+     * Delete the file to import the same source from the start again.
+     */
+    public void setCheckpoint(File checkpointFile, long intervalMillis) {
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalMillis = intervalMillis;
+    }
+
+    public LDIFImportReport importLDIF(File ldifFile) throws LDAPException, IOException {
+        LDIFReader reader = new LDIFReader(ldifFile);
+        try {
+            return importLDIF(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Applies every record of the reader, which is left open.
+     *
+     * @throws LDAPException when the directory becomes unreachable or the source cannot be parsed any further; the
+     *                       checkpoint still records the progress made, so the run can be resumed
+     */
+    public LDIFImportReport importLDIF(LDIFReader reader) throws LDAPException, IOException {
+        LDIFImportReport report = new LDIFImportReport();
+        long[] checkpoint = readCheckpoint();
+        long resumeFrom = checkpoint[0];
+        Progress progress = new Progress(resumeFrom, checkpoint[1], report);
+        AtomicReference<LDAPException> abort = new AtomicReference<LDAPException>();
+        ConcurrentLinkedQueue<Numbered> deferred = new ConcurrentLinkedQueue<Numbered>();
+
+        List<BlockingQueue<Numbered>> queues = new ArrayList<BlockingQueue<Numbered>>(workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                BlockingQueue<Numbered> queue = new ArrayBlockingQueue<Numbered>(queueCapacity);
+                queues.add(queue);
+                futures.add(executor.submit(new Worker(queue, report, progress, abort, deferred)));
+            }
+
+            read(reader, resumeFrom, queues, report, progress, abort);
+            for (BlockingQueue<Numbered> queue : queues) {
+                queue.put(END);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            if (abort.get() == null) {
+                applyDeferred(deferred, report, progress);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            abort.compareAndSet(null, new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted while importing LDIF", ie));
+        } catch (ExecutionException ee) {
+            abort.compareAndSet(null, new LDAPException(ResultCode.LOCAL_ERROR, "LDIF import worker failed", ee.getCause()));
+        } finally {
+            executor.shutdownNow();
+            progress.finish();
+        }
+
+        if (abort.get() != null) {
+            throw abort.get();
+        }
+        return report;
+    }
+
+    private void read(LDIFReader reader, long resumeFrom, List<BlockingQueue<Numbered>> queues, LDIFImportReport report,
+                      Progress progress, AtomicReference<LDAPException> abort) throws IOException, InterruptedException {
+        long number = 0;
+        while (abort.get() == null) {
+            LDIFRecord record;
+            try {
+                record = reader.readLDIFRecord();
+            } catch (LDIFException le) {
+                number++;
+                report.recordRead();
+                if (!le.mayContinueReading()) {
+                    abort.compareAndSet(null, new LDAPException(ResultCode.DECODING_ERROR, le.getMessage(), le));
+                    return;
+                }
+                if (number > resumeFrom) {
+                    report.recordFailure(number, null, ResultCode.DECODING_ERROR, le.getMessage());
+                    progress.done(number);
+                } else {
+                    report.recordSkipped();
+                }
+                continue;
+            }
+            if (record == null) {
+                return;
+            }
+
+            number++;
+            report.recordRead();
+            if (number <= resumeFrom) {
+                report.recordSkipped();
+                continue;
+            }
+
+            String key = routingKey(record);
+            BlockingQueue<Numbered> queue = queues.get((key.hashCode() & Integer.MAX_VALUE) % queues.size());
+            Numbered numbered = new Numbered(number, record, key);
+            while (!queue.offer(numbered, 100L, TimeUnit.MILLISECONDS)) {
+                if (abort.get() != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static String routingKey(LDIFRecord record) {
+        try {
+            return record.getParsedDN().toNormalizedString();
+        } catch (LDAPException le) {
+            return record.getDN().toLowerCase();
+        }
+    }
+
+    /**
+     * Retries parked records in file order until a whole round makes no progress; whatever is left then has failed.
+     * Within a round, a record is not tried while an earlier record for the same entry is still parked.
+     */
+    private void applyDeferred(ConcurrentLinkedQueue<Numbered> deferred, LDIFImportReport report, Progress progress) throws LDAPException {
+        List<Numbered> pending = new ArrayList<Numbered>(deferred);
+        Collections.sort(pending, new Comparator<Numbered>() {
+            @Override
+            public int compare(Numbered a, Numbered b) {
+                return Long.compare(a.number, b.number);
+            }
+        });
+
+        LDAPConnection connection = pool.getConnection();
+        try {
+            boolean progressed = true;
+            while (!pending.isEmpty() && progressed) {
+                progressed = false;
+                Set<String> blocked = new HashSet<String>();
+                for (Iterator<Numbered> it = pending.iterator(); it.hasNext(); ) {
+                    Numbered numbered = it.next();
+                    if (blocked.contains(numbered.key)) {
+                        continue;
+                    }
+                    try {
+                        apply(connection, numbered, report, progress);
+                        progress.done(numbered.number);
+                        it.remove();
+                        progressed = true;
+                    } catch (LDAPException le) {
+                        if (!le.getResultCode().isConnectionUsable()) {
+                            throw le;
+                        }
+                        if (isOrderingFailure(numbered.record, le.getResultCode())) {
+                            blocked.add(numbered.key);
+                        } else {
+                            report.recordFailure(numbered.number, numbered.record.getDN(), le.getResultCode(), le.getMessage());
+                            progress.done(numbered.number);
+                            it.remove();
+                            progressed = true;
+                        }
+                    }
+                }
+            }
+        } catch (LDAPException le) {
+            pool.releaseDefunctConnection(connection);
+            connection = null;
+            throw le;
+        } finally {
+            if (connection != null) {
+                pool.releaseConnection(connection);
+            }
+        }
+
+        Set<String> failed = new HashSet<String>();
+        for (Numbered numbered : pending) {
+            String message = failed.add(numbered.key)
+                    ? "Parent entry never appeared or children were never removed"
+                    : "An earlier record for the same entry was never applied";
+            report.recordFailure(numbered.number, numbered.record.getDN(), ResultCode.NO_SUCH_OBJECT, message);
+            progress.done(numbered.number);
+        }
+    }
+
+    private static void apply(LDAPConnection connection, Numbered numbered, LDIFImportReport report, Progress progress) throws LDAPException {
+        LDIFRecord record = numbered.record;
+        progress.started(numbered.number);
+        try {
+            if (record instanceof Entry) {
+                connection.add((Entry) record);
+            } else {
+                ((LDIFChangeRecord) record).processChange(connection);
+            }
+            report.recordApplied();
+        } catch (LDAPException le) {
+            if (!progress.isReplayed(numbered.number) || !isAlreadyApplied(record, le.getResultCode())) {
+                throw le;
+            }
+            report.recordAlreadyPresent();
+        }
+    }
+
+    /**
+     * @return whether the failure means the directory already holds what a replayed record asks for
+     */
+    private static boolean isAlreadyApplied(LDIFRecord record, ResultCode resultCode) {
+        if (isAdd(record)) {
+            return resultCode == ResultCode.ENTRY_ALREADY_EXISTS;
+        }
+        if (record instanceof LDIFModifyChangeRecord) {
+            return resultCode == ResultCode.ATTRIBUTE_OR_VALUE_EXISTS || resultCode == ResultCode.NO_SUCH_ATTRIBUTE;
+        }
+        return record instanceof LDIFDeleteChangeRecord && resultCode == ResultCode.NO_SUCH_OBJECT;
+    }
+
+    private static boolean isAdd(LDIFRecord record) {
+        return record instanceof Entry || record instanceof LDIFAddChangeRecord;
+    }
+
+    private static boolean isOrderingFailure(LDIFRecord record, ResultCode resultCode) {
+        return (isAdd(record) && resultCode == ResultCode.NO_SUCH_OBJECT)
+                || (record instanceof LDIFDeleteChangeRecord && resultCode == ResultCode.NOT_ALLOWED_ON_NONLEAF);
+    }
+
+    /**
+     * @return the number of completed leading records and the highest record number that may have been sent
+     */
+    private long[] readCheckpoint() throws IOException {
+        if (checkpointFile == null || !checkpointFile.exists()) {
+            return new long[]{0L, 0L};
+        }
+        String content = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8).trim();
+        try {
+            if (content.isEmpty()) {
+                return new long[]{0L, 0L};
+            }
+            String[] counts = content.split("\\s+");
+            long completed = Long.parseLong(counts[0]);
+            return new long[]{completed, counts.length > 1 ? Math.max(completed, Long.parseLong(counts[1])) : completed};
+        } catch (NumberFormatException nfe) {
+            throw new IOException(String.format("Checkpoint file %s does not hold a record count", checkpointFile), nfe);
+        }
+    }
+
+    private static final class Numbered {
+        private final long number;
+        private final LDIFRecord record;
+        private final String key;
+
+        private Numbered(long number, LDIFRecord record, String key) {
+            this.number = number;
+            this.record = record;
+            this.key = key;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final BlockingQueue<Numbered> queue;
+        private final LDIFImportReport report;
+        private final Progress progress;
+        private final AtomicReference<LDAPException> abort;
+        private final ConcurrentLinkedQueue<Numbered> deferred;
+        private final Set<String> deferredKeys = new HashSet<String>();
+
+        private Worker(BlockingQueue<Numbered> queue, LDIFImportReport report, Progress progress,
+                       AtomicReference<LDAPException> abort, ConcurrentLinkedQueue<Numbered> deferred) {
+            this.queue = queue;
+            this.report = report;
+            this.progress = progress;
+            this.abort = abort;
+            this.deferred = deferred;
+        }
+
+        @Override
+        public void run() {
+            List<Numbered> batch = new ArrayList<Numbered>(batchSize);
+            boolean end = false;
+            try {
+                while (!end) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, batchSize - 1);
+                    if (batch.get(batch.size() - 1) == END) {
+                        batch.remove(batch.size() - 1);
+                        end = true;
+                    }
+                    if (!batch.isEmpty() && abort.get() == null) {
+                        try {
+                            applyBatch(batch);
+                        } catch (RuntimeException re) {
+                            abort.compareAndSet(null, new LDAPException(ResultCode.LOCAL_ERROR, "LDIF import worker failed", re));
+                        }
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void applyBatch(List<Numbered> batch) {
+            LDAPConnection connection;
+            try {
+                connection = pool.getConnection();
+            } catch (LDAPException le) {
+                abort.compareAndSet(null, le);
+                return;
+            }
+
+            try {
+                for (Numbered numbered : batch) {
+                    if (deferredKeys.contains(numbered.key)) {
+                        deferred.add(numbered);
+                        continue;
+                    }
+                    try {
+                        apply(connection, numbered, report, progress);
+                        progress.done(numbered.number);
+                    } catch (LDAPException le) {
+                        if (!le.getResultCode().isConnectionUsable()) {
+                            abort.compareAndSet(null, le);
+                            pool.releaseDefunctConnection(connection);
+                            connection = null;
+                            return;
+                        }
+                        if (isOrderingFailure(numbered.record, le.getResultCode())) {
+                            deferredKeys.add(numbered.key);
+                            deferred.add(numbered);
+                        } else {
+                            report.recordFailure(numbered.number, numbered.record.getDN(), le.getResultCode(), le.getMessage());
+                            progress.done(numbered.number);
+                        }
+                    }
+                }
+            } finally {
+                if (connection != null) {
+                    pool.releaseConnection(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tracks which records are complete and advances the checkpoint over the longest finished prefix. Records finish
+     * out of order across workers, so completions ahead of the prefix are kept as bits until the gap closes.
+     * <p>
+     * The highest record number that may have been sent is reserved in the checkpoint file ahead of use, one stretch of
+     * {@code workers * batchSize} records at a time, so a crash never leaves a sent record outside the next run's
+     * replay window.
+     */
+    private final class Progress {
+        private final long base;
+        private final long replayedUpTo;
+        private final LDIFImportReport report;
+        private final BitSet completed = new BitSet();
+        private long contiguous;
+        private long started;
+        private long reserved;
+        private long lastWriteMillis = System.currentTimeMillis();
+
+        private Progress(long base, long replayedUpTo, LDIFImportReport report) {
+            this.base = base;
+            this.replayedUpTo = replayedUpTo;
+            this.report = report;
+            this.contiguous = base;
+            this.started = replayedUpTo;
+            this.reserved = replayedUpTo;
+            report.setCheckpoint(base);
+        }
+
+        /**
+         * @return whether an earlier run may already have sent the record
+         */
+        private boolean isReplayed(long number) {
+            return number <= replayedUpTo;
+        }
+
+        private synchronized void started(long number) {
+            started = Math.max(started, number);
+            if (checkpointFile == null || number <= reserved) {
+                return;
+            }
+            try {
+                write(number + (long) workers * batchSize);
+            } catch (IOException ioe) {
+                System.out.println(String.format("%s - %s", checkpointFile, ioe.getMessage()));
+            }
+        }
+
+        private synchronized void done(long number) {
+            completed.set((int) (number - base - 1));
+            if (number != contiguous + 1) {
+                return;
+            }
+            contiguous = base + completed.nextClearBit((int) (contiguous - base));
+            report.setCheckpoint(contiguous);
+
+            if (checkpointFile != null && System.currentTimeMillis() - lastWriteMillis >= checkpointIntervalMillis) {
+                try {
+                    write(reserved);
+                } catch (IOException ioe) {
+                    System.out.println(String.format("%s - %s", checkpointFile, ioe.getMessage()));
+                }
+            }
+        }
+
+        /**
+         * Writes the final checkpoint once no record can be sent any more, so the reservation shrinks to the records
+         * that really were.
+         */
+        private synchronized void finish() throws IOException {
+            if (checkpointFile != null) {
+                write(started);
+            }
+        }
+
+        /**
+         * Replaces the checkpoint file atomically so a crash mid-write never leaves it unreadable.
+         */
+        private synchronized void write(long upTo) throws IOException {
+            String content = upTo > contiguous ? String.format("%d %d", contiguous, upTo) : Long.toString(contiguous);
+            File tmp = new File(checkpointFile.getAbsoluteFile().getParentFile(), checkpointFile.getName() + ".tmp");
+            Files.write(tmp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            reserved = upTo;
+            lastWriteMillis = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.ldap.service;
+
+import java.util.Map;
+
+/**
+ * Point-in-time view of one operation type recorded by {@link LDAPMetrics}; latencies are in milliseconds.
+ */
+public class OperationStatistics {
+
+    private final long count;
+    private final long failureCount;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+    private final Map<String, Long> resultCodes;
+
+    public OperationStatistics(long count, long failureCount, double meanMillis, double p50Millis, double p99Millis, double p999Millis, double maxMillis, Map<String, Long> resultCodes) {
+        this.count = count;
+        this.failureCount = failureCount;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.p999Millis = p999Millis;
+        this.maxMillis = maxMillis;
+        this.resultCodes = resultCodes;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getP999Millis() {
+        return p999Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return number of calls per result code, e.g. {@code "49 (invalid credentials)" -> 12}
+     */
+    public Map<String, Long> getResultCodes() {
+        return resultCodes;
+    }
+}
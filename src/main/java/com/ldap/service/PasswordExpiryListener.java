@@ -0,0 +1,17 @@
+package com.ldap.service;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Receives one call per user from {@link PasswordExpiryReport}, in directory order.
+ */
+public interface PasswordExpiryListener {
+
+    /**
+     * @param expirationDate when the password expires, {@link LDAPService#INFINITY_TIME} if it never does, or
+     *                       {@code null} if the user's policy could not be read or the user has no
+     *                       {@code pwdChangedTime}; {@link UserAccountSnapshot#getPwdChangedTime()} tells which
+     */
+    void passwordExpiry(String uid, UserAccountSnapshot snapshot, Date expirationDate) throws IOException;
+}
@@ -0,0 +1,133 @@
+package com.ldap.service;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Walks every user under a base DN with a simple paged search and reports each user's password expiration date to a
+ * {@link PasswordExpiryListener}. Entries are streamed through a {@link SearchResultListener} and only one page is
+ * held at a time, so memory use does not grow with the size of the directory.
+ * <p>
+ * The connection must be bound as the administrator and is used for nothing else while the report runs: paged search
+ * state is tied to the connection, so policy entries missing from the cache are read over it between pages.
+ */
+public class PasswordExpiryReport {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private static final String[] ATTRIBUTES;
+
+    static {
+        ATTRIBUTES = new String[UserAccountSnapshot.ATTRIBUTES.length + 1];
+        System.arraycopy(UserAccountSnapshot.ATTRIBUTES, 0, ATTRIBUTES, 0, UserAccountSnapshot.ATTRIBUTES.length);
+        ATTRIBUTES[UserAccountSnapshot.ATTRIBUTES.length] = "uid";
+    }
+
+    private final LDAPConnection connection;
+    private final String baseDN;
+    private final PasswordPolicyCache passwordPolicyCache;
+    private final PasswordPolicyCache.PolicyLoader policyLoader;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int expiringWithinDays = -1;
+
+    public PasswordExpiryReport(final LDAPConnection connection, String baseDN, PasswordPolicyCache passwordPolicyCache) {
+        this.connection = connection;
+        this.baseDN = baseDN;
+        this.passwordPolicyCache = passwordPolicyCache;
+        this.policyLoader = new PasswordPolicyCache.PolicyLoader() {
+            @Override
+            public Integer loadPwdMaxAge(String policyDN) throws LDAPException {
+                SearchResultEntry policy = connection.getEntry(policyDN, "pwdMaxAge");
+                return policy != null ? policy.getAttributeValueAsInteger("pwdMaxAge") : null;
+            }
+        };
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Only reports users whose password expires within the given number of days from now, including passwords that
+     * have already expired. A negative value, the default, reports every user, including those whose expiration date
+     * is unknown.
+     */
+    public void setExpiringWithinDays(int expiringWithinDays) {
+        this.expiringWithinDays = expiringWithinDays;
+    }
+
+    /**
+     * @return the number of users reported to the listener
+     */
+    public long run(PasswordExpiryListener listener) throws LDAPException, IOException {
+        Date cutoff = expiringWithinDays < 0 ? null : DateTime.now().plusDays(expiringWithinDays).toDate();
+        PageCollector page = new PageCollector();
+        SearchRequest searchRequest = new SearchRequest(page, baseDN, SearchScope.SUB, "(uid=*)", ATTRIBUTES);
+
+        long reported = 0;
+        ASN1OctetString cookie = null;
+        do {
+            searchRequest.setControls(new SimplePagedResultsControl(pageSize, cookie, true));
+            SearchResult searchResult = connection.search(searchRequest);
+
+            for (SearchResultEntry entry : page.entries) {
+                UserAccountSnapshot snapshot = UserAccountSnapshot.fromEntry(entry);
+                Date expirationDate = expirationDate(snapshot);
+                if (cutoff == null || (expirationDate != null && !expirationDate.after(cutoff))) {
+                    listener.passwordExpiry(entry.getAttributeValue("uid"), snapshot, expirationDate);
+                    reported++;
+                }
+            }
+            page.entries.clear();
+
+            SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+            if (responseControl == null) {
+                throw new LDAPException(ResultCode.CONTROL_NOT_FOUND, "The server did not return a paged results response control");
+            }
+            cookie = responseControl.moreResultsToReturn() ? responseControl.getCookie() : null;
+        } while (cookie != null);
+
+        return reported;
+    }
+
+    private Date expirationDate(UserAccountSnapshot snapshot) {
+        try {
+            Integer pwdMaxAge = passwordPolicyCache.getPwdMaxAge(snapshot.getEffectivePasswordPolicy(), policyLoader);
+            return pwdMaxAge != null ? snapshot.getExpirationDate(pwdMaxAge) : null;
+        } catch (LDAPException le) {
+            System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Holds the entries of the current page only; the report empties it after every page.
+     */
+    private static final class PageCollector implements SearchResultListener {
+        private final List<SearchResultEntry> entries = new ArrayList<SearchResultEntry>();
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            entries.add(searchEntry);
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of {@code pwdMaxAge} values keyed by password policy DN. Entries expire after a fixed time-to-live so a
+ * policy change is picked up even without a {@link PasswordPolicyCacheRefresher}.
+ */
+public class PasswordPolicyCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final long DEFAULT_TTL_MILLIS = 5L * 60L * 1000L;
+
+    public interface PolicyLoader {
+        Integer loadPwdMaxAge(String policyDN) throws LDAPException;
+    }
+
+    private final long ttlMillis;
+    private final Map<String, CachedPolicy> policies;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PasswordPolicyCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public PasswordPolicyCache(final int maxEntries, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.policies = new LinkedHashMap<String, CachedPolicy>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPolicy> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached {@code pwdMaxAge} of the policy, loading it through {@code loader} when it is missing or
+     * expired. A {@code null} load result is not cached.
+     */
+    public Integer getPwdMaxAge(String policyDN, PolicyLoader loader) throws LDAPException {
+        String key = normalize(policyDN);
+        long now = System.currentTimeMillis();
+        synchronized (policies) {
+            CachedPolicy cached = policies.get(key);
+            if (cached != null && cached.expiresAt > now) {
+                hits.incrementAndGet();
+                return cached.pwdMaxAge;
+            }
+        }
+
+        misses.incrementAndGet();
+        Integer pwdMaxAge = loader.loadPwdMaxAge(policyDN);
+        if (pwdMaxAge != null) {
+            put(policyDN, pwdMaxAge);
+        }
+        return pwdMaxAge;
+    }
+
+    /**
+     * @return the cached {@code pwdMaxAge} of the policy, or {@code null} when it is missing or expired
+     */
+    public Integer getCachedPwdMaxAge(String policyDN) {
+        synchronized (policies) {
+            CachedPolicy cached = policies.get(normalize(policyDN));
+            if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return cached.pwdMaxAge;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String policyDN, int pwdMaxAge) {
+        synchronized (policies) {
+            policies.put(normalize(policyDN), new CachedPolicy(policyDN, pwdMaxAge, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    public boolean contains(String policyDN) {
+        synchronized (policies) {
+            return policies.containsKey(normalize(policyDN));
+        }
+    }
+
+    public void invalidate(String policyDN) {
+        synchronized (policies) {
+            policies.remove(normalize(policyDN));
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (policies) {
+            policies.clear();
+        }
+    }
+
+    /**
+     * @return the DNs currently cached, as originally given to the cache
+     */
+    public List<String> getPolicyDNs() {
+        synchronized (policies) {
+            List<String> policyDNs = new ArrayList<String>(policies.size());
+            for (CachedPolicy cached : policies.values()) {
+                policyDNs.add(cached.policyDN);
+            }
+            return policyDNs;
+        }
+    }
+
+    public int size() {
+        synchronized (policies) {
+            return policies.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static String normalize(String policyDN) {
+        try {
+            return DN.normalize(policyDN);
+        } catch (LDAPException le) {
+            return policyDN.toLowerCase();
+        }
+    }
+
+    private static final class CachedPolicy {
+        private final String policyDN;
+        private final int pwdMaxAge;
+        private final long expiresAt;
+
+        private CachedPolicy(String policyDN, int pwdMaxAge, long expiresAt) {
+            this.policyDN = policyDN;
+            this.pwdMaxAge = pwdMaxAge;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link PasswordPolicyCache} current between TTL expirations, either by periodically re-reading every cached
+ * policy or by listening to a persistent search on the policy container.
+ */
+public class PasswordPolicyCacheRefresher implements Closeable {
+
+    private final PasswordPolicyCache cache;
+    private final PasswordPolicyCache.PolicyLoader loader;
+    private ScheduledExecutorService scheduler;
+    private LDAPConnection persistentSearchConnection;
+    private AsyncRequestID persistentSearchID;
+
+    public PasswordPolicyCacheRefresher(PasswordPolicyCache cache, PasswordPolicyCache.PolicyLoader loader) {
+        this.cache = cache;
+        this.loader = loader;
+    }
+
+    public synchronized void startPolling(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "password-policy-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Re-reads every cached policy. A policy whose entry is gone or has no {@code pwdMaxAge} is dropped from the
+     * cache; one that fails to load for any other reason, e.g. an unreachable server, keeps its cached value until
+     * its TTL runs out.
+     */
+    public void refresh() {
+        for (String policyDN : cache.getPolicyDNs()) {
+            try {
+                Integer pwdMaxAge = loader.loadPwdMaxAge(policyDN);
+                if (pwdMaxAge != null) {
+                    cache.put(policyDN, pwdMaxAge);
+                } else {
+                    cache.invalidate(policyDN);
+                }
+            } catch (LDAPException le) {
+                System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+                if (le.getResultCode() == ResultCode.NO_SUCH_OBJECT) {
+                    cache.invalidate(policyDN);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a persistent search for policy changes under {@code policyBaseDN} on the given connection, which must be
+     * bound with rights to read the policies and is dedicated to this refresher until {@link #close()}.
+     */
+    public synchronized void startPersistentSearch(LDAPConnection connection, String policyBaseDN) throws LDAPException {
+        SearchRequest searchRequest = new SearchRequest(new PolicyChangeListener(), policyBaseDN, SearchScope.SUB, "(pwdMaxAge=*)", "pwdMaxAge");
+        searchRequest.addControl(new PersistentSearchRequestControl(PersistentSearchChangeType.allChangeTypes(), true, true));
+        persistentSearchID = connection.asyncSearch(searchRequest);
+        persistentSearchConnection = connection;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (persistentSearchConnection != null) {
+            try {
+                persistentSearchConnection.abandon(persistentSearchID);
+            } catch (LDAPException le) {
+                System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+            }
+            persistentSearchConnection = null;
+        }
+    }
+
+    private final class PolicyChangeListener implements AsyncSearchResultListener {
+
+        @Override
+        public void searchEntryReturned(SearchResultEntry searchEntry) {
+            EntryChangeNotificationControl changeControl = null;
+            try {
+                changeControl = EntryChangeNotificationControl.get(searchEntry);
+            } catch (LDAPException le) {
+                System.out.println(String.format("%s - %s", le.getResultCode(), le.getMessage()));
+            }
+
+            Integer pwdMaxAge = searchEntry.getAttributeValueAsInteger("pwdMaxAge");
+            boolean deleted = changeControl != null && changeControl.getChangeType() == PersistentSearchChangeType.DELETE;
+            if (deleted || pwdMaxAge == null) {
+                cache.invalidate(searchEntry.getDN());
+            } else if (cache.contains(searchEntry.getDN())) {
+                cache.put(searchEntry.getDN(), pwdMaxAge);
+            }
+
+            if (changeControl != null && changeControl.getPreviousDN() != null) {
+                cache.invalidate(changeControl.getPreviousDN());
+            }
+        }
+
+        @Override
+        public void searchReferenceReturned(SearchResultReference searchReference) {
+        }
+
+        @Override
+        public void searchResultReceived(AsyncRequestID requestID, SearchResult searchResult) {
+            System.out.println(String.format("Password policy persistent search ended: %s - %s", searchResult.getResultCode(), searchResult.getDiagnosticMessage()));
+            cache.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolStatistics;
+
+/**
+ * Point-in-time utilization of one connection pool registered with {@link LDAPMetrics}.
+ */
+public class PoolStatistics {
+
+    private final int availableConnections;
+    private final int maximumAvailableConnections;
+    private final long successfulCheckouts;
+    private final long checkoutsAfterWaiting;
+    private final long failedCheckouts;
+    private final long connectionsClosedDefunct;
+    private final long connectionsClosedExpired;
+
+    public PoolStatistics(int availableConnections, int maximumAvailableConnections, long successfulCheckouts, long checkoutsAfterWaiting, long failedCheckouts, long connectionsClosedDefunct, long connectionsClosedExpired) {
+        this.availableConnections = availableConnections;
+        this.maximumAvailableConnections = maximumAvailableConnections;
+        this.successfulCheckouts = successfulCheckouts;
+        this.checkoutsAfterWaiting = checkoutsAfterWaiting;
+        this.failedCheckouts = failedCheckouts;
+        this.connectionsClosedDefunct = connectionsClosedDefunct;
+        this.connectionsClosedExpired = connectionsClosedExpired;
+    }
+
+    public static PoolStatistics of(LDAPConnectionPool pool) {
+        LDAPConnectionPoolStatistics statistics = pool.getConnectionPoolStatistics();
+        return new PoolStatistics(pool.getCurrentAvailableConnections(), pool.getMaximumAvailableConnections(),
+                statistics.getNumSuccessfulCheckouts(), statistics.getNumSuccessfulCheckoutsAfterWaiting(), statistics.getNumFailedCheckouts(),
+                statistics.getNumConnectionsClosedDefunct(), statistics.getNumConnectionsClosedExpired());
+    }
+
+    public int getAvailableConnections() {
+        return availableConnections;
+    }
+
+    public int getMaximumAvailableConnections() {
+        return maximumAvailableConnections;
+    }
+
+    public long getSuccessfulCheckouts() {
+        return successfulCheckouts;
+    }
+
+    public long getCheckoutsAfterWaiting() {
+        return checkoutsAfterWaiting;
+    }
+
+    public long getFailedCheckouts() {
+        return failedCheckouts;
+    }
+
+    public long getConnectionsClosedDefunct() {
+        return connectionsClosedDefunct;
+    }
+
+    public long getConnectionsClosedExpired() {
+        return connectionsClosedExpired;
+    }
+}
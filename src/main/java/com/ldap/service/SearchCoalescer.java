@@ -0,0 +1,136 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight layer for searches: while a search is in flight, identical searches (same connection or pool, base
+ * DN, scope, filter and attributes) wait for it and share its result instead of sending their own. Nothing is cached
+ * once the search completes, so results are never older than the call that asked for them.
+ */
+public class SearchCoalescer {
+
+    public interface Search<T> {
+        T execute() throws LDAPException;
+    }
+
+    private final ConcurrentHashMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<Key, CompletableFuture<Object>>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public <T> T coalesce(LDAPInterface ldapInterface, String baseDN, SearchScope scope, String filter, String[] attributes, Search<T> search) throws LDAPException {
+        return coalesce(new Key(ldapInterface, baseDN, scope, filter, attributes), search);
+    }
+
+    /**
+     * Keys the search on the request's base DN, scope, filter and attributes, without formatting the filter.
+     */
+    public <T> T coalesce(LDAPInterface ldapInterface, SearchRequest searchRequest, Search<T> search) throws LDAPException {
+        return coalesce(new Key(ldapInterface, searchRequest.getBaseDN(), searchRequest.getScope(), searchRequest.getFilter(), searchRequest.getAttributes()), search);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(Key key, Search<T> search) throws LDAPException {
+        CompletableFuture<Object> leader = new CompletableFuture<Object>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return (T) await(existing);
+        }
+
+        executed.incrementAndGet();
+        try {
+            T result = search.execute();
+            leader.complete(result);
+            return result;
+        } catch (LDAPException le) {
+            leader.completeExceptionally(le);
+            throw le;
+        } catch (RuntimeException re) {
+            leader.completeExceptionally(re);
+            throw re;
+        } catch (Error e) {
+            leader.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    /**
+     * @return the number of searches actually sent
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * @return the number of searches answered by sharing another caller's in-flight search
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws LDAPException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted while waiting for a coalesced search", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof LDAPException) {
+                throw (LDAPException) ee.getCause();
+            }
+            if (ee.getCause() instanceof Error) {
+                throw (Error) ee.getCause();
+            }
+            throw (RuntimeException) ee.getCause();
+        }
+    }
+
+    private static final class Key {
+        private final LDAPInterface ldapInterface;
+        private final String baseDN;
+        private final SearchScope scope;
+        private final Object filter;
+        private final String[] attributes;
+        private final int hashCode;
+
+        /**
+         * @param filter the filter as a string or a {@link com.unboundid.ldap.sdk.Filter}; the two never match each other
+         */
+        private Key(LDAPInterface ldapInterface, String baseDN, SearchScope scope, Object filter, String[] attributes) {
+            this.ldapInterface = ldapInterface;
+            this.baseDN = baseDN;
+            this.scope = scope;
+            this.filter = filter;
+            this.attributes = attributes;
+            this.hashCode = ((System.identityHashCode(ldapInterface) * 31 + baseDN.hashCode()) * 31 + scope.intValue()) * 31
+                    + filter.hashCode() * 31 + Arrays.hashCode(attributes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return ldapInterface == other.ldapInterface && scope.intValue() == other.scope.intValue() && baseDN.equals(other.baseDN)
+                    && filter.equals(other.filter) && Arrays.equals(attributes, other.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
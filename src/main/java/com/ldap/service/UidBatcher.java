@@ -0,0 +1,192 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Merges uid lookups that arrive within a short window into one {@code (|(uid=a)(uid=b)...)} subtree search. The
+ * first caller of a batch waits for the window (or until the batch is full), sends the search and hands every caller
+ * its DN; callers asking for a uid already in the batch share its answer.
+ */
+class UidBatcher {
+
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private Batch open;
+
+    UidBatcher(long windowMillis, int maxBatchSize) {
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return the DN of the entry with the given uid, or {@code null} when there is none
+     */
+    String resolve(LDAPInterface ldapInterface, String baseDN, String username, LDAPMetricsRegistry metricsRegistry) throws LDAPException {
+        String key = username.toLowerCase();
+        Batch batch;
+        CompletableFuture<String> future;
+        boolean leader = false;
+        synchronized (this) {
+            batch = open;
+            if (batch == null || batch.ldapInterface != ldapInterface || !batch.baseDN.equals(baseDN) || batch.size() >= maxBatchSize) {
+                batch = new Batch(ldapInterface, baseDN);
+                open = batch;
+                leader = true;
+            }
+            future = batch.add(key, username);
+            if (batch.size() >= maxBatchSize) {
+                batch.wakeLeader();
+            }
+        }
+
+        if (leader) {
+            batch.awaitWindow(windowMillis, maxBatchSize);
+            synchronized (this) {
+                if (open == batch) {
+                    open = null;
+                }
+            }
+            batch.execute(metricsRegistry);
+        }
+        return await(future);
+    }
+
+    /**
+     * Looks the uids up with one {@code (|(uid=a)(uid=b)...)} subtree search.
+     *
+     * @return the DN of every uid that has an entry, keyed by the lower-cased uid
+     */
+    static Map<String, String> search(LDAPInterface ldapInterface, String baseDN, Collection<String> usernames, LDAPMetricsRegistry metricsRegistry) throws LDAPException {
+        List<Filter> filters = new ArrayList<Filter>(usernames.size());
+        for (String username : usernames) {
+            filters.add(LDAPRequestTemplates.uidFilter(username));
+        }
+        Filter filter = filters.size() == 1 ? filters.get(0) : Filter.createORFilter(filters);
+
+        Map<String, String> dns = new HashMap<String, String>();
+        long startNanos = System.nanoTime();
+        try {
+            SearchResult searchResults = ldapInterface.search(baseDN, SearchScope.SUB, filter, "uid");
+            metricsRegistry.recordOperation(LDAPMetricsRegistry.SUBTREE_SEARCH, searchResults.getResultCode(), System.nanoTime() - startNanos);
+            for (SearchResultEntry entry : searchResults.getSearchEntries()) {
+                String[] uids = entry.getAttributeValues("uid");
+                for (int i = 0; uids != null && i < uids.length; i++) {
+                    String key = uids[i].toLowerCase();
+                    if (!dns.containsKey(key)) {
+                        dns.put(key, entry.getDN());
+                    }
+                }
+            }
+        } catch (LDAPException le) {
+            metricsRegistry.recordOperation(LDAPMetricsRegistry.SUBTREE_SEARCH, le.getResultCode(), System.nanoTime() - startNanos);
+            throw le;
+        }
+        return dns;
+    }
+
+    private static String await(CompletableFuture<String> future) throws LDAPException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Interrupted while waiting for a batched uid lookup", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof LDAPException) {
+                throw (LDAPException) ee.getCause();
+            }
+            throw new LDAPException(ResultCode.LOCAL_ERROR, "Batched uid lookup failed", ee.getCause());
+        }
+    }
+
+    private static final class Batch {
+        private final LDAPInterface ldapInterface;
+        private final String baseDN;
+        private final Map<String, CompletableFuture<String>> lookups = new LinkedHashMap<String, CompletableFuture<String>>();
+        private final List<String> usernames = new ArrayList<String>();
+
+        private Batch(LDAPInterface ldapInterface, String baseDN) {
+            this.ldapInterface = ldapInterface;
+            this.baseDN = baseDN;
+        }
+
+        private synchronized CompletableFuture<String> add(String key, String username) {
+            CompletableFuture<String> future = lookups.get(key);
+            if (future == null) {
+                future = new CompletableFuture<String>();
+                lookups.put(key, future);
+                usernames.add(username);
+            }
+            return future;
+        }
+
+        private synchronized int size() {
+            return lookups.size();
+        }
+
+        private synchronized void wakeLeader() {
+            notifyAll();
+        }
+
+        private synchronized void awaitWindow(long windowMillis, int maxBatchSize) {
+            long deadline = System.currentTimeMillis() + windowMillis;
+            long remaining = windowMillis;
+            while (lookups.size() < maxBatchSize && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+
+        private void execute(LDAPMetricsRegistry metricsRegistry) {
+            List<String> batched;
+            synchronized (this) {
+                batched = new ArrayList<String>(usernames);
+            }
+
+            try {
+                for (Map.Entry<String, String> found : search(ldapInterface, baseDN, batched, metricsRegistry).entrySet()) {
+                    CompletableFuture<String> future = lookups.get(found.getKey());
+                    if (future != null) {
+                        future.complete(found.getValue());
+                    }
+                }
+                for (CompletableFuture<String> future : lookups.values()) {
+                    future.complete(null);
+                }
+            } catch (LDAPException le) {
+                for (CompletableFuture<String> future : lookups.values()) {
+                    future.completeExceptionally(le);
+                }
+            } catch (RuntimeException re) {
+                for (CompletableFuture<String> future : lookups.values()) {
+                    future.completeExceptionally(re);
+                }
+                throw re;
+            } catch (Error e) {
+                for (CompletableFuture<String> future : lookups.values()) {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            }
+        }
+    }
+}
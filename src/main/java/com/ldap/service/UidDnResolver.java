@@ -0,0 +1,257 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves a uid to the DN of its entry with one subtree search and remembers the answer, so later reads can be
+ * base-scope lookups and binds and modifies can target the real DN. Unknown uids are remembered for a shorter time
+ * so a newly provisioned user becomes visible without a restart. Concurrent lookups of the same uid share one
+ * search, and {@link #setBatching} can merge lookups of different uids into one search. At most {@code maxEntries}
+ * uids are remembered. A full resolver forgets uids the way a clock does: a sweep clears the used flag of the uids it
+ * passes and forgets the first one not used since its last pass. Lookups take no lock, only a resolver over its
+ * limit does.
+ */
+public class UidDnResolver {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 30L * 1000L;
+
+    private final int maxEntries;
+    private final long negativeTtlMillis;
+    private final ConcurrentHashMap<String, Resolution> resolutions = new ConcurrentHashMap<String, Resolution>();
+    private Iterator<Map.Entry<String, Resolution>> sweep;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private LDAPMetricsRegistry metricsRegistry = LDAPMetricsRegistry.NONE;
+    private final SearchCoalescer searchCoalescer = new SearchCoalescer();
+    private volatile UidBatcher batcher;
+
+    public UidDnResolver() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    public UidDnResolver(int maxEntries, long negativeTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    public void setMetricsRegistry(LDAPMetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * The single-flight layer used by this resolver; {@link LDAPService} sends its own searches through it as well.
+     */
+    public SearchCoalescer getSearchCoalescer() {
+        return searchCoalescer;
+    }
+
+    /**
+     * Holds each uncached lookup for up to {@code windowMillis} so lookups of other uids made meanwhile go out in the
+     * same search, at most {@code maxBatchSize} uids per search. A window of 0 turns batching off.
+     */
+    public void setBatching(long windowMillis, int maxBatchSize) {
+        this.batcher = windowMillis > 0 ? new UidBatcher(windowMillis, maxBatchSize) : null;
+    }
+
+    /**
+     * @return the DN of the entry with the given uid under {@code baseDN}, or {@code null} when there is none
+     */
+    public String resolve(LDAPInterface ldapInterface, String baseDN, String username) throws LDAPException {
+        String key = username.toLowerCase();
+        Resolution resolution = get(key);
+        if (resolution != null && (resolution.dn != null || resolution.expiresAt > System.currentTimeMillis())) {
+            hits.incrementAndGet();
+            return resolution.dn;
+        }
+
+        misses.incrementAndGet();
+        UidBatcher uidBatcher = batcher;
+        String dn = uidBatcher != null ? uidBatcher.resolve(ldapInterface, baseDN, username, metricsRegistry) : search(ldapInterface, baseDN, username);
+        put(key, new Resolution(dn, dn != null ? Long.MAX_VALUE : System.currentTimeMillis() + negativeTtlMillis));
+        return dn;
+    }
+
+    /**
+     * Resolves several uids at once: remembered uids are answered from memory and the rest are looked up together
+     * in one {@code (|(uid=a)(uid=b)...)} subtree search, so callers should pass a bounded chunk.
+     *
+     * @return the DN of every given uid, keyed as given; uids with no entry under {@code baseDN} map to {@code null}
+     */
+    public Map<String, String> resolveAll(LDAPInterface ldapInterface, String baseDN, Collection<String> usernames) throws LDAPException {
+        Map<String, String> dns = new HashMap<String, String>();
+        List<String> unresolved = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        for (String username : usernames) {
+            Resolution resolution = get(username.toLowerCase());
+            if (resolution != null && (resolution.dn != null || resolution.expiresAt > now)) {
+                hits.incrementAndGet();
+                dns.put(username, resolution.dn);
+            } else {
+                unresolved.add(username);
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return dns;
+        }
+
+        misses.addAndGet(unresolved.size());
+        Map<String, String> found = UidBatcher.search(ldapInterface, baseDN, unresolved, metricsRegistry);
+        for (String username : unresolved) {
+            String key = username.toLowerCase();
+            String dn = found.get(key);
+            put(key, new Resolution(dn, dn != null ? Long.MAX_VALUE : System.currentTimeMillis() + negativeTtlMillis));
+            dns.put(username, dn);
+        }
+        return dns;
+    }
+
+    private String search(final LDAPInterface ldapInterface, String baseDN, String username) throws LDAPException {
+        final SearchRequest searchRequest = LDAPRequestTemplates.uidSearch(baseDN, username);
+        return searchCoalescer.coalesce(ldapInterface, searchRequest, new SearchCoalescer.Search<String>() {
+            @Override
+            public String execute() throws LDAPException {
+                List<SearchResultEntry> entries;
+                long startNanos = System.nanoTime();
+                try {
+                    SearchResult searchResults = ldapInterface.search(searchRequest);
+                    metricsRegistry.recordOperation(LDAPMetricsRegistry.SUBTREE_SEARCH, searchResults.getResultCode(), System.nanoTime() - startNanos);
+                    entries = searchResults.getSearchEntries();
+                } catch (LDAPSearchException lse) {
+                    // A second entry with the uid stops the search at its size limit of one; the first entry is still
+                    // the answer, so the lookup counts as a success.
+                    boolean duplicate = lse.getResultCode() == ResultCode.SIZE_LIMIT_EXCEEDED;
+                    metricsRegistry.recordOperation(LDAPMetricsRegistry.SUBTREE_SEARCH, duplicate ? ResultCode.SUCCESS : lse.getResultCode(), System.nanoTime() - startNanos);
+                    if (!duplicate) {
+                        throw lse;
+                    }
+                    entries = lse.getSearchEntries();
+                }
+                return !entries.isEmpty() ? entries.get(0).getDN() : null;
+            }
+        });
+    }
+
+    /**
+     * @return the remembered DN of the uid, or {@code null} when it has not been resolved to an entry yet
+     */
+    public String getCachedDN(String username) {
+        Resolution resolution = get(username.toLowerCase());
+        if (resolution != null && resolution.dn != null) {
+            hits.incrementAndGet();
+            return resolution.dn;
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} when a recent lookup found no entry with the uid and that answer has not expired yet
+     */
+    public boolean isCachedAsMissing(String username) {
+        Resolution resolution = get(username.toLowerCase());
+        if (resolution != null && resolution.dn == null && resolution.expiresAt > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the outcome of a lookup made outside {@link #resolve}, e.g. by an asynchronous search; a {@code null}
+     * DN is remembered as unknown for the negative TTL.
+     */
+    public void remember(String username, String dn) {
+        misses.incrementAndGet();
+        put(username.toLowerCase(), new Resolution(dn, dn != null ? Long.MAX_VALUE : System.currentTimeMillis() + negativeTtlMillis));
+    }
+
+    /**
+     * Forgets the uid, e.g. after its cached DN turned out to no longer exist.
+     */
+    public void invalidate(String username) {
+        resolutions.remove(username.toLowerCase());
+    }
+
+    public void invalidateAll() {
+        resolutions.clear();
+    }
+
+    public int size() {
+        return resolutions.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private Resolution get(String key) {
+        Resolution resolution = resolutions.get(key);
+        // Written only when clear, so hits on a popular uid do not keep invalidating its cache line.
+        if (resolution != null && !resolution.used) {
+            resolution.used = true;
+        }
+        return resolution;
+    }
+
+    private void put(String key, Resolution resolution) {
+        resolutions.put(key, resolution);
+        if (resolutions.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Moves the clock hand over the uids until the resolver is back within its limit. Each pass clears the used flags
+     * it meets, so only uids read again since the hand last passed them survive the next pass.
+     */
+    private void evict() {
+        synchronized (resolutions) {
+            while (resolutions.size() > maxEntries) {
+                if (sweep == null || !sweep.hasNext()) {
+                    sweep = resolutions.entrySet().iterator();
+                    if (!sweep.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, Resolution> entry = sweep.next();
+                Resolution resolution = entry.getValue();
+                if (resolution.used) {
+                    resolution.used = false;
+                } else {
+                    resolutions.remove(entry.getKey(), resolution);
+                }
+            }
+        }
+    }
+
+    private static final class Resolution {
+        private final String dn;
+        private final long expiresAt;
+        // A new resolution counts as used, so the sweep does not forget it before anyone could read it.
+        private volatile boolean used = true;
+
+        private Resolution(String dn, long expiresAt) {
+            this.dn = dn;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import org.joda.time.DateTime;
+
+import java.util.Date;
+
+/**
+ * The account-state attributes of one user, read in a single search, from which status, activation and expiry are
+ * computed without going back to the directory.
+ */
+public class UserAccountSnapshot {
+
+    public static final String NS_ACCOUNT_LOCK = "nsaccountlock";
+    public static final String ACCOUNT_UNLOCK_TIME = "accountunlocktime";
+    public static final String PWD_CHANGED_TIME = "pwdchangedtime";
+    public static final String PASSWORD_POLICY_SUBENTRY = "passwordpolicysubentry";
+    public static final String NS_ROLE_DN = "nsroledn";
+    public static final String[] ATTRIBUTES = {NS_ACCOUNT_LOCK, ACCOUNT_UNLOCK_TIME, PWD_CHANGED_TIME, PASSWORD_POLICY_SUBENTRY, NS_ROLE_DN};
+
+    public static final String DEFAULT_PASSWORD_POLICY = "cn=Password Policy,cn=config";
+
+    private static final int DAY_IN_SECONDS = 86400;
+
+    private final String dn;
+    private final String nsAccountLock;
+    private final Boolean accountUnlockTime;
+    private final Date pwdChangedTime;
+    private final String passwordPolicySubentry;
+    private final String[] nsRoleDN;
+
+    public UserAccountSnapshot(String dn, String nsAccountLock, Boolean accountUnlockTime, Date pwdChangedTime, String passwordPolicySubentry, String[] nsRoleDN) {
+        this.dn = dn;
+        this.nsAccountLock = nsAccountLock;
+        this.accountUnlockTime = accountUnlockTime;
+        this.pwdChangedTime = pwdChangedTime;
+        this.passwordPolicySubentry = passwordPolicySubentry;
+        this.nsRoleDN = nsRoleDN;
+    }
+
+    public static UserAccountSnapshot fromEntry(Entry entry) {
+        return new UserAccountSnapshot(entry.getDN(),
+                entry.getAttributeValue(NS_ACCOUNT_LOCK),
+                entry.getAttributeValueAsBoolean(ACCOUNT_UNLOCK_TIME),
+                entry.getAttributeValueAsDate(PWD_CHANGED_TIME),
+                entry.getAttributeValue(PASSWORD_POLICY_SUBENTRY),
+                entry.getAttributeValues(NS_ROLE_DN));
+    }
+
+    public String getDN() {
+        return dn;
+    }
+
+    public boolean isLocked() {
+        return Boolean.TRUE.equals(accountUnlockTime);
+    }
+
+    public boolean isActivate() {
+        return nsAccountLock == null || !Boolean.TRUE.equals(new Attribute(NS_ACCOUNT_LOCK, nsAccountLock).getValueAsBoolean());
+    }
+
+    public String getStatus() {
+        if (isLocked()) {
+            return "Locked";
+        } else {
+            return nsAccountLock != null ? "Inactive" : "Active";
+        }
+    }
+
+    public String getNsAccountLock() {
+        return nsAccountLock;
+    }
+
+    public Date getPwdChangedTime() {
+        return pwdChangedTime;
+    }
+
+    public String getPasswordPolicySubentry() {
+        return passwordPolicySubentry;
+    }
+
+    /**
+     * The policy entry governing this user: the explicit {@code passwordpolicysubentry} or the server default.
+     */
+    public String getEffectivePasswordPolicy() {
+        return passwordPolicySubentry != null ? passwordPolicySubentry : DEFAULT_PASSWORD_POLICY;
+    }
+
+    public String[] getNsRoleDN() {
+        return nsRoleDN;
+    }
+
+    /**
+     * @param pwdMaxAge the policy's {@code pwdMaxAge} in seconds, where 0 means passwords never expire
+     * @return the expiration date, or {@code null} when the entry has no {@code pwdChangedTime} to count from
+     */
+    public Date getExpirationDate(int pwdMaxAge) {
+        if (pwdMaxAge == 0) {
+            return LDAPService.INFINITY_TIME;
+        }
+        if (pwdChangedTime == null) {
+            return null;
+        }
+
+        DateTime dateTime = new DateTime(pwdChangedTime);
+        return dateTime.plusDays(pwdMaxAge / DAY_IN_SECONDS).toDate();
+    }
+}
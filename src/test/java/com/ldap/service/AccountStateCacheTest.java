@@ -0,0 +1,394 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.LDAPListener;
+import com.unboundid.ldap.listener.LDAPListenerClientConnection;
+import com.unboundid.ldap.listener.LDAPListenerConfig;
+import com.unboundid.ldap.listener.LDAPListenerRequestHandler;
+import com.unboundid.ldap.listener.ProxyRequestHandler;
+import com.unboundid.ldap.protocol.AddRequestProtocolOp;
+import com.unboundid.ldap.protocol.BindRequestProtocolOp;
+import com.unboundid.ldap.protocol.CompareRequestProtocolOp;
+import com.unboundid.ldap.protocol.DeleteRequestProtocolOp;
+import com.unboundid.ldap.protocol.ExtendedRequestProtocolOp;
+import com.unboundid.ldap.protocol.LDAPMessage;
+import com.unboundid.ldap.protocol.ModifyDNRequestProtocolOp;
+import com.unboundid.ldap.protocol.ModifyRequestProtocolOp;
+import com.unboundid.ldap.protocol.SearchRequestProtocolOp;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import com.unboundid.ldap.sdk.controls.EntryChangeNotificationControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
+import com.unboundid.ldif.LDIFException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AccountStateCacheTest {
+
+    private InMemoryDirectoryServer server;
+    private LDAPConnectionPool adminPool;
+    private LDAPConnectionPool bindPool;
+    private LDAPService ldapService;
+    private LDAPMetrics metrics;
+
+    @Before
+    public void setUp() throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com");
+        config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
+        config.setSchema(null);
+        config.setMaxChangeLogEntries(100);
+
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+
+        server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
+        server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+        server.add("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData1", "userPassword: cl0ud+rain", "pwdChangedTime: 20140901000000Z");
+        server.add("dn: uid=AdminData2,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData2", "nsaccountlock: true");
+
+        LDAPPoolConfig poolConfig = new LDAPPoolConfig(1, 4);
+        adminPool = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), poolConfig);
+        bindPool = LDAPConnectionPools.createBindPool("localhost", server.getListenPort(), poolConfig);
+        ldapService = new LDAPService(adminPool, bindPool, "ou=people,dc=fico,dc=com");
+        metrics = new LDAPMetrics();
+        ldapService.setMetricsRegistry(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        if (ldapService.getAccountStateCache() != null) {
+            ldapService.getAccountStateCache().close();
+        }
+        adminPool.close();
+        bindPool.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void shouldAnswerStatusChecksFromMemory() throws LDAPException {
+        AccountStateCache cache = ldapService.enableAccountStateCache(AccountStateCache.DEFAULT_MAX_STALENESS_MILLIS, 60000L);
+
+        assertThat(cache.size(), is(2));
+        assertThat(ldapService.currentUserStatus("AdminData1"), is("Active"));
+        assertThat(ldapService.isAccountActivate("admindata2"), is(false));
+        assertThat(ldapService.getUserAccountSnapshot("AdminData1").getPwdChangedTime(), is(notNullValue()));
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.BASE_SEARCH), is(nullValue()));
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.SUBTREE_SEARCH), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReplayChangelog() throws LDAPException, LDIFException {
+        AccountStateCache cache = new AccountStateCache("ou=people,dc=fico,dc=com");
+        LDAPConnection connection = adminPool.getConnection();
+        try {
+            cache.load(connection);
+
+            server.modify("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "changetype: modify", "add: nsaccountlock", "nsaccountlock: true");
+            server.delete("uid=AdminData2,ou=people,dc=fico,dc=com");
+            server.add("dn: uid=AdminData3,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData3");
+
+            assertThat(cache.pollChangelog(connection), is(3));
+        } finally {
+            adminPool.releaseConnection(connection);
+        }
+
+        assertThat(cache.get("AdminData1").isActivate(), is(false));
+        assertThat(cache.get("AdminData2"), is(nullValue()));
+        assertThat(cache.get("AdminData3").getStatus(), is("Active"));
+    }
+
+    @Test
+    public void shouldRecordFailedPollsInMetrics() throws InterruptedException, LDAPException {
+        ldapService.enableAccountStateCache(AccountStateCache.DEFAULT_MAX_STALENESS_MILLIS, 20L);
+
+        server.shutDown(true);
+        for (int i = 0; i < 100 && metrics.getOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC) == null; i++) {
+            Thread.sleep(10L);
+        }
+
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.ACCOUNT_STATE_SYNC).getFailureCount() > 0L, is(true));
+    }
+
+    @Test
+    public void shouldFallBackToDirectoryWhenStale() throws LDAPException, LDIFException, InterruptedException {
+        AccountStateCache cache = new AccountStateCache("ou=people,dc=fico,dc=com", 50L);
+        cache.put("AdminData1", new UserAccountSnapshot("uid=AdminData1,ou=people,dc=fico,dc=com", null, null, new Date(), null, null));
+        ldapService.setAccountStateCache(cache);
+        server.modify("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "changetype: modify", "add: nsaccountlock", "nsaccountlock: true");
+
+        Thread.sleep(100L);
+
+        assertThat(ldapService.isAccountActivate("AdminData1"), is(false));
+        assertThat(cache.getStaleReadCount(), is(1L));
+    }
+
+    @Test
+    public void shouldSeeOwnModifiesImmediately() throws LDAPException, LDIFException {
+        ldapService.enableAccountStateCache(AccountStateCache.DEFAULT_MAX_STALENESS_MILLIS, 60000L);
+
+        ldapService.inactivateAccount("AdminData1");
+
+        assertThat(ldapService.isAccountActivate("AdminData1"), is(false));
+    }
+
+    @Test
+    public void shouldSeeOwnAsyncModifiesImmediately() throws Exception {
+        ldapService.enableAccountStateCache(AccountStateCache.DEFAULT_MAX_STALENESS_MILLIS, 60000L);
+        assertThat(ldapService.currentUserStatus("AdminData1"), is("Active"));
+
+        new AsyncLDAPService(ldapService).inactivateAccount("AdminData1").get();
+
+        assertThat(ldapService.currentUserStatus("AdminData1"), is("Inactive"));
+    }
+
+    @Test
+    public void shouldRemoveDeletedUsersWhateverTheirNamingAttribute() throws LDAPException, LDIFException {
+        server.add("dn: cn=Contractor One,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "cn: Contractor One", "uid: Contractor1");
+        AccountStateCache cache = new AccountStateCache("ou=people,dc=fico,dc=com");
+        LDAPConnection connection = adminPool.getConnection();
+        try {
+            cache.load(connection);
+
+            server.delete("cn=Contractor One,ou=people,dc=fico,dc=com");
+            server.delete("uid=AdminData2,ou=people,dc=fico,dc=com");
+
+            assertThat(cache.pollChangelog(connection), is(2));
+        } finally {
+            adminPool.releaseConnection(connection);
+        }
+
+        assertThat(cache.get("Contractor1"), is(nullValue()));
+        assertThat(cache.get("AdminData2"), is(nullValue()));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void shouldApplyChangesMadeWhileLoadingOverPersistentSearch() throws Exception {
+        final PersistentSearchRequestHandler handler = new PersistentSearchRequestHandler(server);
+        LDAPListener listener = new LDAPListener(new LDAPListenerConfig(0, handler));
+        listener.startListening();
+        LDAPConnection connection = new LDAPConnection("localhost", listener.getListenPort(), LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD);
+        AccountStateCache cache = new AccountStateCache("ou=people,dc=fico,dc=com");
+        try {
+            // Changed once the load has read the entry, before the load completes.
+            handler.afterNextLoad(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        server.modify("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "changetype: modify", "add: nsaccountlock", "nsaccountlock: true");
+                        handler.publish(server.getEntry("uid=AdminData1,ou=people,dc=fico,dc=com"), PersistentSearchChangeType.MODIFY);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+
+            assertThat(cache.startPersistentSearch(connection), is(2L));
+            assertThat(cache.get("AdminData1").isActivate(), is(false));
+
+            server.add("dn: uid=AdminData3,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData3");
+            handler.publish(server.getEntry("uid=AdminData3,ou=people,dc=fico,dc=com"), PersistentSearchChangeType.ADD);
+            server.delete("uid=AdminData2,ou=people,dc=fico,dc=com");
+            handler.publish(new Entry("uid=AdminData2,ou=people,dc=fico,dc=com"), PersistentSearchChangeType.DELETE);
+            for (int i = 0; i < 100 && cache.get("AdminData2") != null; i++) {
+                Thread.sleep(10L);
+            }
+
+            assertThat(cache.get("AdminData3").getStatus(), is("Active"));
+            assertThat(cache.get("AdminData2"), is(nullValue()));
+        } finally {
+            cache.close();
+            connection.close();
+            listener.shutDown(true);
+        }
+    }
+
+    @Test
+    public void shouldGoStaleWhenPersistentSearchStalls() throws Exception {
+        PersistentSearchRequestHandler handler = new PersistentSearchRequestHandler(server);
+        LDAPListener listener = new LDAPListener(new LDAPListenerConfig(0, handler));
+        listener.startListening();
+        LDAPConnection connection = new LDAPConnection("localhost", listener.getListenPort(), LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD);
+        AccountStateCache cache = new AccountStateCache("ou=people,dc=fico,dc=com", 300L);
+        CountDownLatch stall = new CountDownLatch(1);
+        try {
+            cache.startPersistentSearch(connection);
+            Thread.sleep(600L);
+            assertThat(cache.get("AdminData1"), is(notNullValue()));
+
+            handler.stallRootDSEReads(stall);
+            Thread.sleep(600L);
+            assertThat(cache.get("AdminData1"), is(nullValue()));
+        } finally {
+            stall.countDown();
+            cache.close();
+            connection.close();
+            listener.shutDown(true);
+        }
+    }
+
+    @Test
+    public void shouldNotStoreSnapshotReadBeforeInvalidation() {
+        AccountStateCache cache = new AccountStateCache("ou=people,dc=fico,dc=com");
+        UserAccountSnapshot beforeModify = new UserAccountSnapshot("uid=AdminData1,ou=people,dc=fico,dc=com", null, null, null, null, null);
+
+        long invalidationStamp = cache.invalidationStamp("AdminData1");
+        cache.invalidate("ADMINDATA1");
+
+        assertThat(cache.put("AdminData1", beforeModify, invalidationStamp), is(false));
+        assertThat(cache.get("AdminData1"), is(nullValue()));
+        assertThat(cache.put("AdminData1", beforeModify, cache.invalidationStamp("AdminData1")), is(true));
+        assertThat(cache.get("AdminData1"), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldKeepEntriesReachableAfterRemovals() {
+        AccountStateCache cache = new AccountStateCache("ou=people,dc=fico,dc=com");
+        for (int i = 0; i < 1000; i++) {
+            cache.put(String.format("user%d", i), new UserAccountSnapshot(String.format("uid=user%d,ou=people,dc=fico,dc=com", i), null, null, null, null, null));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            cache.invalidate(String.format("user%d", i));
+        }
+
+        assertThat(cache.size(), is(500));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(cache.get(String.format("USER%d", i)) == null, is(i % 2 == 0));
+        }
+    }
+
+    /**
+     * Passes requests through to the in-memory directory, which has no persistent search, and keeps persistent
+     * searches open so the test can publish change notifications on them.
+     */
+    private static final class PersistentSearchRequestHandler extends LDAPListenerRequestHandler {
+        private final LDAPListenerRequestHandler delegate;
+        private final LDAPListenerClientConnection clientConnection;
+        private final List<Object[]> searches;
+        private final AtomicReference<Runnable> afterNextLoad;
+        private final AtomicReference<CountDownLatch> rootDSEStall;
+
+        private PersistentSearchRequestHandler(InMemoryDirectoryServer server) {
+            this(new ProxyRequestHandler(new SingleServerSet("localhost", server.getListenPort())), null,
+                    new CopyOnWriteArrayList<Object[]>(), new AtomicReference<Runnable>(), new AtomicReference<CountDownLatch>());
+        }
+
+        private PersistentSearchRequestHandler(LDAPListenerRequestHandler delegate, LDAPListenerClientConnection clientConnection,
+                                               List<Object[]> searches, AtomicReference<Runnable> afterNextLoad,
+                                               AtomicReference<CountDownLatch> rootDSEStall) {
+            this.delegate = delegate;
+            this.clientConnection = clientConnection;
+            this.searches = searches;
+            this.afterNextLoad = afterNextLoad;
+            this.rootDSEStall = rootDSEStall;
+        }
+
+        private void afterNextLoad(Runnable runnable) {
+            afterNextLoad.set(runnable);
+        }
+
+        /**
+         * Holds every root DSE read until the latch is released, as a connection that stopped answering would.
+         */
+        private void stallRootDSEReads(CountDownLatch latch) {
+            rootDSEStall.set(latch);
+        }
+
+        private void publish(Entry entry, PersistentSearchChangeType changeType) throws LDAPException {
+            for (Object[] search : searches) {
+                ((LDAPListenerClientConnection) search[0]).sendSearchResultEntry((Integer) search[1], entry,
+                        new EntryChangeNotificationControl(changeType, null, -1L));
+            }
+        }
+
+        @Override
+        public LDAPListenerRequestHandler newInstance(LDAPListenerClientConnection connection) throws LDAPException {
+            return new PersistentSearchRequestHandler(delegate.newInstance(connection), connection, searches, afterNextLoad, rootDSEStall);
+        }
+
+        @Override
+        public void closeInstance() {
+            delegate.closeInstance();
+        }
+
+        @Override
+        public LDAPMessage processSearchRequest(int messageID, SearchRequestProtocolOp request, List<Control> controls) {
+            for (Control control : controls) {
+                if (PersistentSearchRequestControl.PERSISTENT_SEARCH_REQUEST_OID.equals(control.getOID())) {
+                    searches.add(new Object[]{clientConnection, messageID});
+                    return null;
+                }
+            }
+            CountDownLatch stall = rootDSEStall.get();
+            if (stall != null && request.getBaseDN().isEmpty()) {
+                try {
+                    stall.await(5L, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            LDAPMessage result = delegate.processSearchRequest(messageID, request, controls);
+            if (request.getFilter().toString().equals("(uid=*)")) {
+                Runnable runnable = afterNextLoad.getAndSet(null);
+                if (runnable != null) {
+                    runnable.run();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public LDAPMessage processAddRequest(int messageID, AddRequestProtocolOp request, List<Control> controls) {
+            return delegate.processAddRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processBindRequest(int messageID, BindRequestProtocolOp request, List<Control> controls) {
+            return delegate.processBindRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processCompareRequest(int messageID, CompareRequestProtocolOp request, List<Control> controls) {
+            return delegate.processCompareRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processDeleteRequest(int messageID, DeleteRequestProtocolOp request, List<Control> controls) {
+            return delegate.processDeleteRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processExtendedRequest(int messageID, ExtendedRequestProtocolOp request, List<Control> controls) {
+            return delegate.processExtendedRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processModifyRequest(int messageID, ModifyRequestProtocolOp request, List<Control> controls) {
+            return delegate.processModifyRequest(messageID, request, controls);
+        }
+
+        @Override
+        public LDAPMessage processModifyDNRequest(int messageID, ModifyDNRequestProtocolOp request, List<Control> controls) {
+            return delegate.processModifyDNRequest(messageID, request, controls);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncLDAPServiceTest {
+
+    private InMemoryDirectoryServer server;
+    private LDAPConnectionPool adminPool;
+    private LDAPConnectionPool bindPool;
+    private LDAPService ldapService;
+    private AsyncLDAPService asyncLDAPService;
+
+    @Before
+    public void setUp() throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com", "cn=config");
+        config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
+        config.setSchema(null);
+
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+
+        server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
+        server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+        server.add("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData1", "userPassword: cl0ud+rain", "pwdChangedTime: 20140901000000Z");
+        server.add("dn: cn=config", "objectClass: top", "objectClass: nsContainer", "cn: config");
+        server.add("dn: cn=Password Policy,cn=config", "objectClass: top", "objectClass: pwdPolicy", "cn: Password Policy", "pwdMaxAge: 7776000");
+
+        LDAPPoolConfig poolConfig = new LDAPPoolConfig(1, 4);
+        adminPool = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), poolConfig);
+        bindPool = LDAPConnectionPools.createBindPool("localhost", server.getListenPort(), poolConfig);
+        ldapService = new LDAPService(adminPool, bindPool, "ou=people,dc=fico,dc=com");
+        asyncLDAPService = new AsyncLDAPService(ldapService);
+    }
+
+    @After
+    public void tearDown() {
+        adminPool.close();
+        bindPool.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void shouldReadAccountStateAndExpiry() throws Exception {
+        assertThat(asyncLDAPService.authenticate("AdminData1", "cl0ud+rain").get(), is(AuthenticationResult.SUCCESS));
+        assertThat(asyncLDAPService.currentUserStatus("AdminData1").get(), is("Active"));
+        assertThat(asyncLDAPService.getUserAccountExpirationDate("AdminData1").get(), is(new DateTime(2014, 11, 30, 0, 0, DateTimeZone.UTC).toDate()));
+        assertThat(asyncLDAPService.getUserAccountSnapshot("Nobody").get(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldComposeModifyAndRead() throws Exception {
+        boolean activate = asyncLDAPService.inactivateAccount("AdminData1")
+                .thenCompose(new Function<LDAPResult, CompletableFuture<Boolean>>() {
+                    @Override
+                    public CompletableFuture<Boolean> apply(LDAPResult result) {
+                        return asyncLDAPService.isAccountActivate("AdminData1");
+                    }
+                })
+                .get();
+
+        assertThat(activate, is(false));
+        assertThat(adminPool.getConnectionPoolStatistics().getNumAvailableConnections(), is(1));
+    }
+
+    @Test
+    public void shouldFailModifyOfUnknownUser() throws InterruptedException {
+        try {
+            asyncLDAPService.updateUserPassword("Nobody", "n3w+rain").get();
+            fail();
+        } catch (ExecutionException ee) {
+            assertThat(((LDAPException) ee.getCause()).getResultCode(), is(ResultCode.NO_SUCH_OBJECT));
+        }
+    }
+
+    @Test
+    public void shouldTimeOutSlowRequests() throws InterruptedException {
+        server.setProcessingDelayMillis(500L);
+
+        try {
+            asyncLDAPService.withTimeout(50L).currentUserStatus("AdminData1").get();
+            fail();
+        } catch (ExecutionException ee) {
+            assertThat(((LDAPException) ee.getCause()).getResultCode(), is(ResultCode.TIMEOUT));
+        }
+    }
+
+    @Test
+    public void shouldReturnConnectionWhenCancelled() throws InterruptedException {
+        server.setProcessingDelayMillis(500L);
+
+        CompletableFuture<String> status = asyncLDAPService.currentUserStatus("AdminData1");
+        status.cancel(true);
+
+        // The connection is checked out on the executor, so it may come back just after cancel returns.
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (adminPool.getConnectionPoolStatistics().getNumAvailableConnections() != 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(status.isCancelled(), is(true));
+        assertThat(adminPool.getConnectionPoolStatistics().getNumAvailableConnections(), is(1));
+    }
+
+    @Test
+    public void shouldNotBlockCallerWhenPoolIsExhausted() throws Exception {
+        adminPool.setCreateIfNecessary(false);
+        adminPool.setMaxWaitTimeMillis(5000L);
+        List<LDAPConnection> held = new ArrayList<LDAPConnection>();
+        for (int i = 0; i < adminPool.getMaximumAvailableConnections(); i++) {
+            held.add(adminPool.getConnection());
+        }
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<String> status = asyncLDAPService.currentUserStatus("AdminData1");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        assertThat(elapsedMillis < 1000L, is(true));
+        assertThat(status.isDone(), is(false));
+
+        for (LDAPConnection connection : held) {
+            adminPool.releaseConnection(connection);
+        }
+
+        assertThat(status.get(), is("Active"));
+    }
+
+    @Test
+    public void shouldCompleteReadsWhileWritesWaitForExhaustedPool() throws Exception {
+        LDAPConnectionPool writePool = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), new LDAPPoolConfig(1, 1));
+        try {
+            writePool.setCreateIfNecessary(false);
+            writePool.setMaxWaitTimeMillis(5000L);
+            AsyncLDAPService replicated = new AsyncLDAPService(new LDAPService(adminPool, writePool, bindPool, "ou=people,dc=fico,dc=com"));
+            LDAPConnection held = writePool.getConnection();
+
+            List<CompletableFuture<LDAPResult>> writes = new ArrayList<CompletableFuture<LDAPResult>>();
+            for (int i = 0; i < 4; i++) {
+                writes.add(replicated.updateUserPassword("AdminData1", "n3w+rain" + i));
+            }
+
+            long startNanos = System.nanoTime();
+            assertThat(replicated.currentUserStatus("AdminData1").get(), is("Active"));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 1000L, is(true));
+
+            writePool.releaseConnection(held);
+            for (CompletableFuture<LDAPResult> write : writes) {
+                assertThat(write.get().getResultCode(), is(ResultCode.SUCCESS));
+            }
+        } finally {
+            writePool.close();
+        }
+    }
+
+    @Test
+    public void shouldRememberUnknownUids() throws Exception {
+        assertThat(asyncLDAPService.getUserAccountSnapshot("Nobody").get(), is(nullValue()));
+        assertThat(ldapService.getUidDnResolver().getMissCount(), is(1L));
+
+        assertThat(asyncLDAPService.getUserAccountSnapshot("Nobody").get(), is(nullValue()));
+        assertThat(ldapService.getUidDnResolver().getMissCount(), is(1L));
+    }
+}
@@ -0,0 +1,86 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.ResultCode;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class LDAPMetricsTest {
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertThat(histogram.getCount(), is(1000L));
+        assertThat(histogram.getPercentileMillis(50.0), closeTo(500.0, 500.0 * 0.04));
+        assertThat(histogram.getPercentileMillis(99.0), closeTo(990.0, 990.0 * 0.04));
+        assertThat(histogram.getPercentileMillis(100.0), is(1000.0));
+        assertThat(histogram.getMeanMillis(), closeTo(500.5, 0.001));
+    }
+
+    @Test
+    public void shouldCountOperationsByResultCode() {
+        LDAPMetrics metrics = new LDAPMetrics();
+
+        metrics.recordOperation(LDAPMetricsRegistry.BIND, ResultCode.SUCCESS, 1000000L);
+        metrics.recordOperation(LDAPMetricsRegistry.BIND, ResultCode.INVALID_CREDENTIALS, 2000000L);
+        metrics.recordOperation(LDAPMetricsRegistry.BIND, ResultCode.INVALID_CREDENTIALS, 3000000L);
+
+        OperationStatistics bind = metrics.getOperation(LDAPMetricsRegistry.BIND);
+        assertThat(bind.getCount(), is(3L));
+        assertThat(bind.getFailureCount(), is(2L));
+        assertThat(bind.getResultCodes().get(ResultCode.INVALID_CREDENTIALS.toString()), is(2L));
+    }
+
+    @Test
+    public void shouldKeepPoolsWithTheSameNameApart() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com");
+        config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
+        config.setSchema(null);
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.startListening();
+        LDAPConnectionPool first = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), new LDAPPoolConfig(1, 1));
+        LDAPConnectionPool second = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), new LDAPPoolConfig(1, 1));
+        try {
+            LDAPMetrics metrics = new LDAPMetrics();
+            metrics.registerPool(first);
+            metrics.registerPool(second);
+            metrics.registerPool(first);
+
+            assertThat(metrics.getPools().size(), is(2));
+            assertThat(metrics.getPools().containsKey(first.getConnectionPoolName()), is(true));
+            assertThat(metrics.getPools().containsKey(String.format("%s-2", second.getConnectionPoolName())), is(true));
+        } finally {
+            first.close();
+            second.close();
+            server.shutDown(true);
+        }
+    }
+
+    @Test
+    public void shouldExposeOperationsOverJmx() throws Exception {
+        LDAPMetrics metrics = new LDAPMetrics();
+        metrics.recordOperation(LDAPMetricsRegistry.MODIFY, ResultCode.SUCCESS, 1000000L);
+
+        ObjectName objectName = metrics.registerMBean("test");
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertThat(mBeanServer.getAttribute(objectName, "Operations") != null, is(true));
+        } finally {
+            mBeanServer.unregisterMBean(objectName);
+        }
+    }
+}
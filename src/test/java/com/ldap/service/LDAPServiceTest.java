@@ -4,12 +4,22 @@ import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.ldif.LDIFException;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -23,7 +33,7 @@ public class LDAPServiceTest {
 
     @Before
     public void setUp() throws LDAPException, LDIFException {
-        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com");
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com", "cn=config");
         config.addAdditionalBindCredentials("cn=Directory Manager", "password");
         config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
         config.setSchema(null);
@@ -33,7 +43,9 @@ public class LDAPServiceTest {
 
         server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
         server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
-        server.add("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData1", "userPassword: cl0ud+rain", "mail: admin@fico.com", "cn: First Last", "givenname: First", "sn: Last");
+        server.add("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData1", "userPassword: cl0ud+rain", "mail: admin@fico.com", "cn: First Last", "givenname: First", "sn: Last", "pwdChangedTime: 20140901000000Z");
+        server.add("dn: cn=config", "objectClass: top", "objectClass: nsContainer", "cn: config");
+        server.add("dn: cn=Password Policy,cn=config", "objectClass: top", "objectClass: pwdPolicy", "cn: Password Policy", "pwdMaxAge: 7776000");
 
         conn = server.getConnection();
         ldapService = new LDAPService(conn, "ou=people,dc=fico,dc=com");
@@ -76,4 +88,147 @@ public class LDAPServiceTest {
 
         assertThat(ldapService.isAccountActivate(username), is(false));
     }
+
+    @Test
+    public void shouldBeActiveThenInactiveStatusWhenAccountIsInactivated() throws LDAPException, LDIFException {
+        String username = "AdminData1";
+
+        assertThat(ldapService.currentUserStatus(username), is("Active"));
+
+        ldapService.inactivateAccount(username);
+
+        assertThat(ldapService.currentUserStatus(username), is("Inactive"));
+    }
+
+    @Test
+    public void shouldBeNullSnapshotWhenUserDoesNotExist() throws LDAPException {
+        assertThat(ldapService.getUserAccountSnapshot("AdminData2"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldExpireNinetyDaysAfterPasswordChange() {
+        String username = "AdminData1";
+
+        assertThat(ldapService.getUserAccountExpirationDate(username), is(new DateTime(2014, 11, 30, 0, 0, DateTimeZone.UTC).toDate()));
+    }
+
+    @Test
+    public void shouldAuthenticateAndModifyUserOutsideDefaultContainer() throws LDAPException, LDIFException {
+        server.add("dn: ou=contractors,ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+        server.add("dn: uid=Contractor1,ou=contractors,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: Contractor1", "userPassword: s3cret");
+
+        assertThat(ldapService.haveLDAPAuthentication("Contractor1", "s3cret"), is(true));
+
+        ldapService.inactivateAccount("Contractor1");
+
+        assertThat(ldapService.isAccountActivate("Contractor1"), is(false));
+    }
+
+    @Test
+    public void shouldResolveUserDNOnlyOnce() throws LDAPException {
+        String username = "AdminData1";
+
+        ldapService.currentUserStatus(username);
+        ldapService.isAccountActivate(username);
+        ldapService.getUserAccountExpirationDate(username);
+
+        assertThat(ldapService.getUidDnResolver().getMissCount(), is(1L));
+        assertThat(ldapService.getUidDnResolver().getHitCount(), is(2L));
+    }
+
+    @Test
+    public void shouldKeepUidReadBetweenLookupsOfOthers() {
+        UidDnResolver resolver = new UidDnResolver(100, UidDnResolver.DEFAULT_NEGATIVE_TTL_MILLIS);
+        for (int i = 0; i <= 100; i++) {
+            resolver.remember("User" + i, "uid=User" + i + ",ou=people,dc=fico,dc=com");
+        }
+        resolver.remember("AdminData1", "uid=AdminData1,ou=people,dc=fico,dc=com");
+
+        for (int i = 101; i < 1100; i++) {
+            assertThat(resolver.getCachedDN("AdminData1"), is("uid=AdminData1,ou=people,dc=fico,dc=com"));
+            resolver.remember("User" + i, "uid=User" + i + ",ou=people,dc=fico,dc=com");
+            assertThat(resolver.size(), is(100));
+        }
+        assertThat(resolver.getCachedDN("AdminData1"), is("uid=AdminData1,ou=people,dc=fico,dc=com"));
+    }
+
+    @Test
+    public void shouldUpdateUserPasswordsInBulk() throws LDAPException {
+        Map<String, String> passwords = new HashMap<String, String>();
+        passwords.put("AdminData1", "n3w+rain");
+
+        BulkOperationReport report = ldapService.updateUserPasswords(passwords);
+
+        assertThat(report.getSuccessCount(), is(1));
+        assertThat(ldapService.haveLDAPAuthentication("AdminData1", "n3w+rain"), is(true));
+    }
+
+    @Test
+    public void shouldReportEveryUserAcrossPages() throws LDAPException, LDIFException, IOException {
+        for (int i = 1; i <= 4; i++) {
+            server.add(String.format("dn: uid=User%d,ou=people,dc=fico,dc=com", i), "objectclass: top", "objectclass: ficoUser", String.format("uid: User%d", i), "pwdChangedTime: 20140901000000Z");
+        }
+        final Map<String, Date> expirationDates = new HashMap<String, Date>();
+        PasswordExpiryReport report = new PasswordExpiryReport(conn, "ou=people,dc=fico,dc=com", new PasswordPolicyCache());
+        report.setPageSize(2);
+
+        long reported = report.run(new PasswordExpiryListener() {
+            @Override
+            public void passwordExpiry(String uid, UserAccountSnapshot snapshot, Date expirationDate) {
+                expirationDates.put(uid, expirationDate);
+            }
+        });
+
+        assertThat(reported, is(5L));
+        assertThat(expirationDates.get("User3"), is(new DateTime(2014, 11, 30, 0, 0, DateTimeZone.UTC).toDate()));
+    }
+
+    @Test
+    public void shouldWriteOnlyExpiringUsersAsCsv() throws LDAPException, LDIFException, IOException {
+        server.add("dn: uid=NewUser1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: NewUser1", "pwdChangedTime: " + DateTime.now(DateTimeZone.UTC).toString("yyyyMMddHHmmss'Z'"));
+        StringWriter csv = new StringWriter();
+
+        long reported = ldapService.reportPasswordExpiry(7, new CsvPasswordExpiryWriter(csv));
+
+        assertThat(reported, is(1L));
+        assertThat(csv.toString(), is("uid,dn,expirationDate,status\nAdminData1,\"uid=AdminData1,ou=people,dc=fico,dc=com\",2014-11-30T00:00:00Z,Active\n"));
+    }
+
+    @Test
+    public void shouldWriteNoChangeTimeForUserWithoutPwdChangedTime() throws LDAPException, LDIFException, IOException {
+        server.add("dn: uid=Imported1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: Imported1");
+        StringWriter csv = new StringWriter();
+
+        ldapService.reportPasswordExpiry(-1, new CsvPasswordExpiryWriter(csv));
+
+        assertThat(ldapService.getUserAccountExpirationDate("Imported1"), is(nullValue()));
+        assertThat(csv.toString().contains("Imported1,\"uid=Imported1,ou=people,dc=fico,dc=com\",noChangeTime,Active\n"), is(true));
+        assertThat(ldapService.reportPasswordExpiry(7, new CsvPasswordExpiryWriter(new StringWriter())), is(1L));
+    }
+
+    @Test
+    public void shouldMatchUidLiterallyWhenItHoldsFilterCharacters() throws LDAPException, LDIFException {
+        server.add("dn: uid=Smith (Contractor)*,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: Smith (Contractor)*", "nsaccountlock: true");
+
+        assertThat(ldapService.getUserAccountSnapshot("AdminData*"), is(nullValue()));
+        assertThat(ldapService.getUserAccountSnapshot("*)(uid=AdminData1"), is(nullValue()));
+        assertThat(ldapService.isAccountActivate("Smith (Contractor)*"), is(false));
+    }
+
+    @Test
+    public void shouldResolveFirstEntryWhenUidIsDuplicated() throws LDAPException, LDIFException {
+        server.add("dn: cn=AdminData1 Copy,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData1", "cn: AdminData1 Copy", "nsaccountlock: true");
+        String firstDN = conn.search("ou=people,dc=fico,dc=com", SearchScope.SUB, "(uid=AdminData1)", "1.1").getSearchEntries().get(0).getDN();
+        LDAPMetrics metrics = new LDAPMetrics();
+        ldapService.setMetricsRegistry(metrics);
+
+        assertThat(ldapService.getUserAccountSnapshot("AdminData1").getDN(), is(firstDN));
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.SUBTREE_SEARCH).getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void shouldShareConstantModifications() {
+        assertThat(ldapService.inactivateModifications() == ldapService.inactivateModifications(), is(true));
+        assertThat(ldapService.inactivateModifications()[0].getValues()[0], is("cn=nsManagedDisabledRole,ou=people,dc=fico,dc=com"));
+    }
 }
\ No newline at end of file
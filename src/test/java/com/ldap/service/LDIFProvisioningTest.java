@@ -0,0 +1,208 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import com.unboundid.ldif.LDIFWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class LDIFProvisioningTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryDirectoryServer server;
+    private LDAPConnectionPool adminPool;
+
+    @Before
+    public void setUp() throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com");
+        config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
+        config.setSchema(null);
+
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+
+        server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
+        server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+
+        adminPool = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), new LDAPPoolConfig(1, 4));
+    }
+
+    @After
+    public void tearDown() {
+        adminPool.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void shouldApplyEntriesAndChangeRecords() throws Exception {
+        StringBuilder ldif = new StringBuilder();
+        ldif.append("dn: uid=Staff1,ou=staff,dc=fico,dc=com\nobjectclass: top\nobjectclass: ficoUser\nuid: Staff1\n\n");
+        ldif.append("dn: ou=staff,dc=fico,dc=com\nobjectclass: top\nobjectclass: organizationalunit\n\n");
+        users(ldif, 0, 200);
+        ldif.append("dn: uid=User7,ou=people,dc=fico,dc=com\nchangetype: modify\nadd: nsaccountlock\nnsaccountlock: true\n\n");
+        ldif.append("dn: uid=User8,ou=people,dc=fico,dc=com\nchangetype: delete\n\n");
+
+        LDIFImporter importer = new LDIFImporter(adminPool);
+        importer.setBatchSize(16);
+        LDIFImportReport report = importer.importLDIF(write(ldif));
+
+        assertThat(report.getReadCount(), is(204L));
+        assertThat(report.getAppliedCount(), is(204L));
+        assertThat(report.getFailureCount(), is(0L));
+        assertThat(report.getCheckpoint(), is(204L));
+        assertThat(server.getEntry("uid=Staff1,ou=staff,dc=fico,dc=com"), is(notNullValue()));
+        assertThat(server.getEntry("uid=User7,ou=people,dc=fico,dc=com").getAttributeValue("nsaccountlock"), is("true"));
+        assertThat(server.getEntry("uid=User8,ou=people,dc=fico,dc=com"), is(nullValue()));
+        assertThat(server.countEntriesBelow("ou=people,dc=fico,dc=com"), is(200));
+    }
+
+    @Test
+    public void shouldResumeFromCheckpoint() throws Exception {
+        StringBuilder ldif = new StringBuilder();
+        users(ldif, 0, 100);
+        File checkpoint = folder.newFile("import.checkpoint");
+        Files.write(checkpoint.toPath(), "50".getBytes(StandardCharsets.UTF_8));
+
+        LDIFImporter importer = new LDIFImporter(adminPool);
+        importer.setCheckpoint(checkpoint, LDIFImporter.DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+        LDIFImportReport report = importer.importLDIF(write(ldif));
+
+        assertThat(report.getSkippedCount(), is(50L));
+        assertThat(report.getAppliedCount(), is(50L));
+        assertThat(server.getEntry("uid=User10,ou=people,dc=fico,dc=com"), is(nullValue()));
+        assertThat(server.getEntry("uid=User60,ou=people,dc=fico,dc=com"), is(notNullValue()));
+        assertThat(new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8), is("100"));
+    }
+
+    @Test
+    public void shouldCountReplayedAddsAsAlreadyPresent() throws Exception {
+        StringBuilder ldif = new StringBuilder();
+        users(ldif, 0, 20);
+        File ldifFile = write(ldif);
+        File checkpoint = folder.newFile("import.checkpoint");
+
+        LDIFImporter importer = new LDIFImporter(adminPool);
+        importer.setCheckpoint(checkpoint, LDIFImporter.DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+        importer.importLDIF(ldifFile);
+        // As left by a run that sent every record but crashed before any completion was written.
+        Files.write(checkpoint.toPath(), "0 20".getBytes(StandardCharsets.UTF_8));
+        LDIFImportReport report = importer.importLDIF(ldifFile);
+
+        assertThat(report.getAppliedCount(), is(0L));
+        assertThat(report.getAlreadyPresentCount(), is(20L));
+        assertThat(report.getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void shouldCountReplayedChangeRecordsAsAlreadyPresent() throws Exception {
+        server.add("dn: uid=Leaver,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: Leaver");
+        StringBuilder ldif = new StringBuilder();
+        users(ldif, 0, 5);
+        ldif.append("dn: uid=User1,ou=people,dc=fico,dc=com\nchangetype: modify\nadd: nsaccountlock\nnsaccountlock: true\n\n");
+        ldif.append("dn: uid=User3,ou=people,dc=fico,dc=com\nchangetype: modify\ndelete: objectclass\nobjectclass: top\n\n");
+        ldif.append("dn: uid=Leaver,ou=people,dc=fico,dc=com\nchangetype: delete\n\n");
+        File ldifFile = write(ldif);
+        File checkpoint = folder.newFile("import.checkpoint");
+
+        LDIFImporter importer = new LDIFImporter(adminPool);
+        importer.setCheckpoint(checkpoint, LDIFImporter.DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+        importer.importLDIF(ldifFile);
+        Files.write(checkpoint.toPath(), "3 8".getBytes(StandardCharsets.UTF_8));
+        LDIFImportReport report = importer.importLDIF(ldifFile);
+
+        assertThat(report.getSkippedCount(), is(3L));
+        assertThat(report.getAppliedCount(), is(0L));
+        assertThat(report.getAlreadyPresentCount(), is(5L));
+        assertThat(report.getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void shouldReportConflictsOutsideTheReplayWindow() throws Exception {
+        server.add("dn: uid=User1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: User1", "nsaccountlock: true");
+        StringBuilder ldif = new StringBuilder();
+        users(ldif, 0, 3);
+        ldif.append("dn: uid=User2,ou=people,dc=fico,dc=com\nchangetype: modify\nadd: nsaccountlock\nnsaccountlock: true\n\n");
+        ldif.append("dn: uid=User2,ou=people,dc=fico,dc=com\nchangetype: modify\nadd: nsaccountlock\nnsaccountlock: true\n-\nadd: mail\nmail: user2@fico.com\n\n");
+        ldif.append("dn: uid=Nobody,ou=people,dc=fico,dc=com\nchangetype: delete\n\n");
+
+        LDIFImportReport report = new LDIFImporter(adminPool).importLDIF(write(ldif));
+
+        assertThat(report.getAppliedCount(), is(3L));
+        assertThat(report.getAlreadyPresentCount(), is(0L));
+        assertThat(report.getFailureCount(), is(3L));
+        assertThat(report.getCheckpoint(), is(6L));
+        assertThat(server.getEntry("uid=User2,ou=people,dc=fico,dc=com").getAttributeValue("mail"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldKeepLaterRecordsBehindDeferredAdd() throws Exception {
+        StringBuilder ldif = new StringBuilder();
+        ldif.append("dn: uid=Staff1,ou=staff,dc=fico,dc=com\nobjectclass: top\nobjectclass: ficoUser\nuid: Staff1\n\n");
+        ldif.append("dn: uid=Staff1,ou=staff,dc=fico,dc=com\nchangetype: modify\nadd: nsaccountlock\nnsaccountlock: true\n\n");
+        ldif.append("dn: ou=staff,dc=fico,dc=com\nobjectclass: top\nobjectclass: organizationalunit\n\n");
+
+        LDIFImportReport report = new LDIFImporter(adminPool).importLDIF(write(ldif));
+
+        assertThat(report.getAppliedCount(), is(3L));
+        assertThat(report.getFailureCount(), is(0L));
+        assertThat(report.getCheckpoint(), is(3L));
+        assertThat(server.getEntry("uid=Staff1,ou=staff,dc=fico,dc=com").getAttributeValue("nsaccountlock"), is("true"));
+    }
+
+    @Test
+    public void shouldExportSubtreeAcrossPages() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            server.add(String.format("dn: uid=User%d,ou=people,dc=fico,dc=com", i), "objectclass: top", "objectclass: ficoUser", String.format("uid: User%d", i));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LDIFWriter writer = new LDIFWriter(out);
+        LDIFExporter exporter = new LDIFExporter(adminPool);
+        exporter.setPageSize(10);
+
+        assertThat(exporter.export("ou=people,dc=fico,dc=com", "(uid=*)", writer), is(25L));
+
+        LDIFReader reader = new LDIFReader(new ByteArrayInputStream(out.toByteArray()));
+        int entries = 0;
+        for (Entry entry = reader.readEntry(); entry != null; entry = reader.readEntry()) {
+            assertThat(entry.getAttributeValue("uid"), is(notNullValue()));
+            entries++;
+        }
+        reader.close();
+        assertThat(entries, is(25));
+    }
+
+    private static void users(StringBuilder ldif, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ldif.append(String.format("dn: uid=User%d,ou=people,dc=fico,dc=com\nobjectclass: top\nobjectclass: ficoUser\nuid: User%d\n\n", i, i));
+        }
+    }
+
+    private File write(StringBuilder ldif) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), ldif.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
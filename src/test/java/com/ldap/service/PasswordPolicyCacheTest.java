@@ -0,0 +1,113 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PasswordPolicyCacheTest {
+
+    private Map<String, Integer> directory;
+    private int loads;
+    private LDAPException failure;
+    private PasswordPolicyCache.PolicyLoader loader;
+
+    @Before
+    public void setUp() {
+        directory = new HashMap<String, Integer>();
+        directory.put("cn=Password Policy,cn=config", 7776000);
+        directory.put("cn=FicoPasswordPolicy,cn=config", 0);
+        directory.put("cn=ShortPasswordPolicy,cn=config", 86400);
+        loads = 0;
+        failure = null;
+        loader = new PasswordPolicyCache.PolicyLoader() {
+            @Override
+            public Integer loadPwdMaxAge(String policyDN) throws LDAPException {
+                loads++;
+                if (failure != null) {
+                    throw failure;
+                }
+                return directory.get(policyDN);
+            }
+        };
+    }
+
+    @Test
+    public void shouldLoadPolicyOnceWhileCached() throws LDAPException {
+        PasswordPolicyCache cache = new PasswordPolicyCache();
+
+        assertThat(cache.getPwdMaxAge("cn=Password Policy,cn=config", loader), is(7776000));
+        assertThat(cache.getPwdMaxAge("CN=Password Policy, cn=config", loader), is(7776000));
+
+        assertThat(loads, is(1));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedPolicy() throws LDAPException {
+        PasswordPolicyCache cache = new PasswordPolicyCache(2, PasswordPolicyCache.DEFAULT_TTL_MILLIS);
+
+        cache.getPwdMaxAge("cn=Password Policy,cn=config", loader);
+        cache.getPwdMaxAge("cn=FicoPasswordPolicy,cn=config", loader);
+        cache.getPwdMaxAge("cn=Password Policy,cn=config", loader);
+        cache.getPwdMaxAge("cn=ShortPasswordPolicy,cn=config", loader);
+
+        assertThat(cache.contains("cn=Password Policy,cn=config"), is(true));
+        assertThat(cache.contains("cn=FicoPasswordPolicy,cn=config"), is(false));
+        assertThat(cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void shouldReloadPolicyAfterTimeToLive() throws LDAPException {
+        PasswordPolicyCache cache = new PasswordPolicyCache(PasswordPolicyCache.DEFAULT_MAX_ENTRIES, -1);
+
+        cache.getPwdMaxAge("cn=Password Policy,cn=config", loader);
+        cache.getPwdMaxAge("cn=Password Policy,cn=config", loader);
+
+        assertThat(loads, is(2));
+    }
+
+    @Test
+    public void shouldPickUpChangedPolicyOnRefresh() throws LDAPException {
+        PasswordPolicyCache cache = new PasswordPolicyCache();
+        PasswordPolicyCacheRefresher refresher = new PasswordPolicyCacheRefresher(cache, loader);
+
+        cache.getPwdMaxAge("cn=Password Policy,cn=config", loader);
+        directory.put("cn=Password Policy,cn=config", 86400);
+        refresher.refresh();
+
+        assertThat(cache.getPwdMaxAge("cn=Password Policy,cn=config", loader), is(86400));
+        assertThat(cache.getHitCount(), is(1L));
+    }
+
+    @Test
+    public void shouldKeepCachedPolicyWhenRefreshFails() throws LDAPException {
+        PasswordPolicyCache cache = new PasswordPolicyCache();
+        PasswordPolicyCacheRefresher refresher = new PasswordPolicyCacheRefresher(cache, loader);
+        cache.getPwdMaxAge("cn=Password Policy,cn=config", loader);
+        cache.getPwdMaxAge("cn=ShortPasswordPolicy,cn=config", loader);
+
+        failure = new LDAPException(ResultCode.SERVER_DOWN);
+        refresher.refresh();
+
+        assertThat(cache.getCachedPwdMaxAge("cn=Password Policy,cn=config"), is(7776000));
+
+        failure = null;
+        directory.remove("cn=ShortPasswordPolicy,cn=config");
+        refresher.refresh();
+
+        assertThat(cache.contains("cn=ShortPasswordPolicy,cn=config"), is(false));
+
+        failure = new LDAPException(ResultCode.NO_SUCH_OBJECT);
+        refresher.refresh();
+
+        assertThat(cache.contains("cn=Password Policy,cn=config"), is(false));
+    }
+}
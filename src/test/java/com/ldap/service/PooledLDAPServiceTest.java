@@ -0,0 +1,200 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldif.LDIFException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PooledLDAPServiceTest {
+
+    private InMemoryDirectoryServer server;
+    private LDAPConnectionPool adminPool;
+    private LDAPConnectionPool bindPool;
+    private LDAPService ldapService;
+
+    @Before
+    public void setUp() throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com");
+        config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
+        config.setSchema(null);
+
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+
+        server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
+        server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+        server.add("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData1", "userPassword: cl0ud+rain", "mail: admin@fico.com", "cn: First Last", "givenname: First", "sn: Last");
+
+        LDAPPoolConfig poolConfig = new LDAPPoolConfig(1, 4);
+        adminPool = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), poolConfig);
+        bindPool = LDAPConnectionPools.createBindPool("localhost", server.getListenPort(), poolConfig);
+        ldapService = new LDAPService(adminPool, bindPool, "ou=people,dc=fico,dc=com");
+    }
+
+    @After
+    public void tearDown() {
+        adminPool.close();
+        bindPool.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void shouldKeepAdminIdentityAfterUserAuthentication() throws LDAPException, LDIFException {
+        String username = "AdminData1";
+
+        assertThat(ldapService.haveLDAPAuthentication(username, "cl0ud+rain"), is(true));
+
+        ldapService.inactivateAccount(username);
+
+        assertThat(ldapService.isAccountActivate(username), is(false));
+    }
+
+    @Test
+    public void shouldBeFalseWhenLDAPAuthenticationFailure() {
+        assertThat(ldapService.haveLDAPAuthentication("AdminData1", "worng"), is(false));
+    }
+
+    @Test
+    public void shouldServeConcurrentRequestsFromOneInstance() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 200; i++) {
+                final boolean validPassword = i % 2 == 0;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        boolean authenticated = ldapService.haveLDAPAuthentication("AdminData1", validPassword ? "cl0ud+rain" : "worng");
+                        return authenticated == validPassword && ldapService.isAccountActivate("AdminData1");
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldInactivateAndActivateAccountsInBulk() throws LDAPException, LDIFException {
+        List<String> usernames = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            server.add(String.format("dn: uid=Bulk%d,ou=people,dc=fico,dc=com", i), "objectclass: top", "objectclass: ficoUser", String.format("uid: Bulk%d", i), "userPassword: cl0ud+rain");
+            usernames.add(String.format("Bulk%d", i));
+        }
+        usernames.add("Unknown");
+        ldapService.setBulkConcurrency(2, 8);
+
+        BulkOperationReport report = ldapService.inactivateAccounts(usernames);
+
+        assertThat(report.getSuccessCount(), is(50));
+        assertThat(report.getResult("Unknown").getResultCode(), is(ResultCode.NO_SUCH_OBJECT));
+        assertThat(ldapService.isAccountActivate("Bulk7"), is(false));
+
+        report = ldapService.activateAccounts(usernames.subList(0, 50));
+
+        assertThat(report.getFailureCount(), is(0));
+        assertThat(ldapService.isAccountActivate("Bulk7"), is(true));
+    }
+
+    @Test
+    public void shouldResolveBulkUidsWithOneSearchPerChunk() throws LDAPException, LDIFException {
+        List<String> usernames = new ArrayList<String>();
+        for (int i = 0; i < 150; i++) {
+            server.add(String.format("dn: uid=Bulk%d,ou=people,dc=fico,dc=com", i), "objectclass: top", "objectclass: ficoUser", String.format("uid: Bulk%d", i));
+            usernames.add(String.format("Bulk%d", i));
+        }
+        LDAPMetrics metrics = new LDAPMetrics();
+        ldapService.setMetricsRegistry(metrics);
+
+        BulkOperationReport report = ldapService.inactivateAccounts(usernames);
+
+        assertThat(report.getSuccessCount(), is(150));
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.SUBTREE_SEARCH).getCount(), is(2L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyBulkWindow() {
+        ldapService.setBulkConcurrency(2, 0);
+    }
+
+    @Test
+    public void shouldReleaseConnectionWhenExpiryListenerFails() throws Exception {
+        int available = adminPool.getCurrentAvailableConnections();
+
+        try {
+            ldapService.reportPasswordExpiry(-1, new PasswordExpiryListener() {
+                @Override
+                public void passwordExpiry(String uid, UserAccountSnapshot snapshot, Date expirationDate) {
+                    throw new IllegalStateException("listener failed");
+                }
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        assertThat(adminPool.getCurrentAvailableConnections(), is(available));
+    }
+
+    @Test
+    public void shouldRefuseAccountStateCacheWithoutChangelog() {
+        int available = adminPool.getCurrentAvailableConnections();
+
+        try {
+            ldapService.enableAccountStateCache(AccountStateCache.DEFAULT_MAX_STALENESS_MILLIS, 60000L);
+            fail("Expected the missing change log to be reported");
+        } catch (LDAPException le) {
+            assertThat(le.getResultCode(), is(ResultCode.UNWILLING_TO_PERFORM));
+        }
+
+        assertThat(ldapService.getAccountStateCache() == null, is(true));
+        assertThat(adminPool.getCurrentAvailableConnections(), is(available));
+    }
+
+    @Test
+    public void shouldReturnTypedAuthenticationResults() throws Exception {
+        assertThat(ldapService.authenticate("AdminData1", "cl0ud+rain"), is(AuthenticationResult.SUCCESS));
+        assertThat(ldapService.authenticate("AdminData1", "worng"), is(AuthenticationResult.INVALID_CREDENTIALS));
+        assertThat(ldapService.authenticate("AdminData2", "cl0ud+rain"), is(AuthenticationResult.INVALID_CREDENTIALS));
+        assertThat(ldapService.getAuthenticator().authenticateAsync("AdminData1", "cl0ud+rain").get(), is(AuthenticationResult.SUCCESS));
+    }
+
+    @Test
+    public void shouldBeUnavailableWhenNoBindPermitIsFree() {
+        LDAPAuthenticator authenticator = new LDAPAuthenticator(bindPool, ldapService.dnLookup(), 0, 10L);
+
+        assertThat(authenticator.authenticate("AdminData1", "cl0ud+rain"), is(AuthenticationResult.UNAVAILABLE));
+    }
+
+    @Test
+    public void shouldRecordDirectoryCallsAndPoolUtilization() throws LDAPException {
+        LDAPMetrics metrics = new LDAPMetrics();
+        ldapService.setMetricsRegistry(metrics);
+
+        ldapService.haveLDAPAuthentication("AdminData1", "worng");
+        ldapService.currentUserStatus("AdminData1");
+
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.SUBTREE_SEARCH).getCount(), is(1L));
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.BASE_SEARCH).getCount(), is(1L));
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.BIND).getResultCodes().get(ResultCode.INVALID_CREDENTIALS.toString()), is(1L));
+        assertThat(metrics.getPools().keySet().size(), is(2));
+    }
+}
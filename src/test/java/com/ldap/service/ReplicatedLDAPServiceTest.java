@@ -0,0 +1,92 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldif.LDIFException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReplicatedLDAPServiceTest {
+
+    private InMemoryDirectoryServer supplier;
+    private InMemoryDirectoryServer replica;
+    private LDAPConnectionPool readPool;
+    private LDAPConnectionPool writePool;
+    private LDAPConnectionPool bindPool;
+    private LDAPService ldapService;
+
+    @Before
+    public void setUp() throws LDAPException, LDIFException, IOException {
+        supplier = startServer();
+        replica = startServer();
+        int deadPort = unusedPort();
+
+        LDAPPoolConfig poolConfig = new LDAPPoolConfig(1, 4);
+        poolConfig.setConnectTimeoutMillis(1000);
+        readPool = LDAPConnectionPools.createAdminPool(LDAPServerSets.replicas(new String[]{"localhost", "localhost"}, new int[]{replica.getListenPort(), deadPort},
+                LDAPServerSets.LoadBalancing.ROUND_ROBIN, poolConfig), LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD, poolConfig);
+        writePool = LDAPConnectionPools.createWritePool(LDAPServerSets.failover(new String[]{"localhost", "localhost"}, new int[]{deadPort, supplier.getListenPort()}, poolConfig),
+                LDAPConnectionPools.ADMIN_DN, LDAPConnectionPools.ADMIN_PASSWORD, poolConfig);
+        bindPool = LDAPConnectionPools.createBindPool(LDAPServerSets.replicas(new String[]{"localhost"}, new int[]{replica.getListenPort()},
+                LDAPServerSets.LoadBalancing.FEWEST_CONNECTIONS, poolConfig), poolConfig);
+        ldapService = new LDAPService(readPool, writePool, bindPool, "ou=people,dc=fico,dc=com");
+    }
+
+    @After
+    public void tearDown() {
+        readPool.close();
+        writePool.close();
+        bindPool.close();
+        supplier.shutDown(true);
+        replica.shutDown(true);
+    }
+
+    @Test
+    public void shouldSendModifiesToSupplierAndReadsToReplica() throws LDAPException, LDIFException {
+        ldapService.inactivateAccount("AdminData1");
+
+        assertThat(supplier.getEntry("uid=AdminData1,ou=people,dc=fico,dc=com").hasAttribute("nsaccountlock"), is(true));
+        assertThat(replica.getEntry("uid=AdminData1,ou=people,dc=fico,dc=com").hasAttribute("nsaccountlock"), is(false));
+        assertThat(ldapService.isAccountActivate("AdminData1"), is(true));
+    }
+
+    @Test
+    public void shouldSkipUnreachableServers() throws LDAPException {
+        for (int i = 0; i < 10; i++) {
+            assertThat(ldapService.currentUserStatus("AdminData1"), is("Active"));
+        }
+        assertThat(ldapService.haveLDAPAuthentication("AdminData1", "cl0ud+rain"), is(true));
+    }
+
+    private static InMemoryDirectoryServer startServer() throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com");
+        config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
+        config.setSchema(null);
+
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.startListening();
+
+        server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
+        server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+        server.add("dn: uid=AdminData1,ou=people,dc=fico,dc=com", "objectclass: top", "objectclass: ficoUser", "uid: AdminData1", "userPassword: cl0ud+rain");
+        return server;
+    }
+
+    private static int unusedPort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
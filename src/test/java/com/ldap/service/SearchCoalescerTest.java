@@ -0,0 +1,159 @@
+package com.ldap.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldif.LDIFException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SearchCoalescerTest {
+
+    private InMemoryDirectoryServer server;
+    private LDAPConnectionPool adminPool;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("dc=fico,dc=com");
+        config.addAdditionalBindCredentials("cn=admin,cn=administrators,cn=dscc", "Odsee#dm1n");
+        config.setSchema(null);
+
+        server = new InMemoryDirectoryServer(config);
+        server.startListening();
+
+        server.add("dn: dc=fico,dc=com", "objectClass: top", "objectClass: domain");
+        server.add("dn: ou=people,dc=fico,dc=com", "objectClass: top", "objectClass: organizationalunit");
+        for (int i = 0; i < 8; i++) {
+            server.add(String.format("dn: uid=User%d,ou=people,dc=fico,dc=com", i), "objectclass: top", "objectclass: ficoUser", String.format("uid: User%d", i));
+        }
+
+        adminPool = LDAPConnectionPools.createAdminPool("localhost", server.getListenPort(), new LDAPPoolConfig(1, 8));
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        adminPool.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    public void shouldShareOneInFlightSearch() throws Exception {
+        final SearchCoalescer coalescer = new SearchCoalescer();
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws LDAPException {
+                    return coalescer.coalesce(adminPool, "ou=people,dc=fico,dc=com", SearchScope.SUB, "(uid=User1)", new String[]{"1.1"},
+                            new SearchCoalescer.Search<String>() {
+                                @Override
+                                public String execute() throws LDAPException {
+                                    try {
+                                        release.await(5, TimeUnit.SECONDS);
+                                    } catch (InterruptedException ie) {
+                                        Thread.currentThread().interrupt();
+                                    }
+                                    return adminPool.searchForEntry("ou=people,dc=fico,dc=com", SearchScope.SUB, "(uid=User1)", "1.1").getDN();
+                                }
+                            });
+                }
+            }));
+        }
+        while (coalescer.getExecutedCount() + coalescer.getCoalescedCount() < 8) {
+            Thread.sleep(1L);
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(), is("uid=User1,ou=people,dc=fico,dc=com"));
+        }
+        assertThat(coalescer.getExecutedCount(), is(1L));
+        assertThat(coalescer.getCoalescedCount(), is(7L));
+    }
+
+    @Test
+    public void shouldFailFollowersWhenLeaderThrowsError() throws Exception {
+        final SearchCoalescer coalescer = new SearchCoalescer();
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 2; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws LDAPException {
+                    return coalescer.coalesce(adminPool, "ou=people,dc=fico,dc=com", SearchScope.SUB, "(uid=User1)", new String[]{"1.1"},
+                            new SearchCoalescer.Search<String>() {
+                                @Override
+                                public String execute() {
+                                    try {
+                                        release.await(5, TimeUnit.SECONDS);
+                                    } catch (InterruptedException ie) {
+                                        Thread.currentThread().interrupt();
+                                    }
+                                    throw new StackOverflowError();
+                                }
+                            });
+                }
+            }));
+        }
+        while (coalescer.getExecutedCount() + coalescer.getCoalescedCount() < 2) {
+            Thread.sleep(1L);
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException ee) {
+                assertThat(ee.getCause() instanceof StackOverflowError, is(true));
+            }
+        }
+    }
+
+    @Test
+    public void shouldBatchLookupsOfDifferentUids() throws Exception {
+        final UidDnResolver resolver = new UidDnResolver();
+        resolver.setBatching(200L, 8);
+        LDAPMetrics metrics = new LDAPMetrics();
+        resolver.setMetricsRegistry(metrics);
+
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < 8; i++) {
+            final String username = String.format("user%d", i);
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws LDAPException {
+                    return resolver.resolve(adminPool, "ou=people,dc=fico,dc=com", username);
+                }
+            }));
+        }
+
+        for (int i = 0; i < 8; i++) {
+            assertThat(results.get(i).get(), is(String.format("uid=User%d,ou=people,dc=fico,dc=com", i)));
+        }
+        assertThat(metrics.getOperation(LDAPMetricsRegistry.SUBTREE_SEARCH).getCount() < 8L, is(true));
+        assertThat(resolver.resolve(adminPool, "ou=people,dc=fico,dc=com", "Nobody"), is(nullValue()));
+    }
+}